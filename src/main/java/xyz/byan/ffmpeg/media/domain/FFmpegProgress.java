@@ -0,0 +1,64 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.Data;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 01:20.
+ * @description: FFmpeg执行进度，由 -progress 输出的一组 key=value 解析得到
+ */
+@Data
+public class FFmpegProgress {
+    /**
+     * 已处理的帧数
+     */
+    private Long frame;
+    /**
+     * 当前的处理帧率
+     */
+    private Float fps;
+    /**
+     * 已输出的媒体时长，单位：毫秒
+     */
+    private Long outTime;
+    /**
+     * 处理速度，相对于实时播放的倍数
+     */
+    private Float speed;
+    /**
+     * 当前的输出比特率，单位：kb/s
+     */
+    private Float bitRate;
+    /**
+     * 已输出的大小，单位：B
+     */
+    private Long totalSize;
+    /**
+     * 是否已结束(progress=end)
+     */
+    private boolean end;
+    /**
+     * 输出的总时长，单位：毫秒；未知时(如直播流)为空
+     */
+    private Long duration;
+    /**
+     * 完成的百分比(0~100)，总时长未知时为空
+     */
+    private Float percent;
+    /**
+     * 预计剩余时间，单位：毫秒，总时长未知时为空
+     */
+    private Long eta;
+    /**
+     * 开始执行后经过的时间，单位：毫秒
+     */
+    private Long elapsed;
+    /**
+     * 已输出的媒体时长持续没有增长的时间，单位：毫秒；持续增大说明编码可能已经卡住
+     */
+    private Long stalled;
+    /**
+     * 是否由看门狗产生：ffmpeg 超过检查间隔没有输出进度时补发，除 elapsed、stalled 外沿用上一次的值
+     */
+    private boolean watchdog;
+}
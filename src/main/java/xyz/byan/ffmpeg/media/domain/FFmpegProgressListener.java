@@ -0,0 +1,15 @@
+package xyz.byan.ffmpeg.media.domain;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 01:20.
+ * @description: FFmpeg执行进度的监听器，在读取进程输出的线程中回调，不应执行耗时操作
+ */
+public interface FFmpegProgressListener {
+
+    /**
+     * 收到一组新的进度
+     * @param progress
+     */
+    void onProgress(FFmpegProgress progress);
+}
@@ -0,0 +1,480 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.extern.log4j.Log4j2;
+import xyz.byan.ffmpeg.media.domain.enums.JobPriorityEnum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 23:45.
+ * @description: FFmpeg进程调度器
+ * 同时运行的进程数有上限，超过上限的任务按优先级(JobPriorityEnum)排队，同一优先级先提交先执行；
+ * 排队的任务数也有上限，队列满时 submit 阻塞调用方(背压)，trySubmit 直接拒绝；
+ * 每个任务有超时时间，超时后强制结束进程。进程的标准错误和标准输出由共享的线程池读取(OutputCapture)，不再为每条命令新建线程，
+ * 只保留有限的输出，日志按采样输出。
+ * 直播转推等不会自行结束的命令通过 submitLongRunning 提交，在单独的线程中运行，不占用并发名额，
+ * 否则几路直播就会占满名额，之后的截帧、探测媒体信息等任务只能一直排队
+ */
+@Log4j2
+public class FFmpegScheduler {
+
+    /**
+     * 默认并发数：CPU核数的一半，FFmpeg编码本身也是多线程的
+     */
+    public static final int DEFAULT_CONCURRENCY = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * 默认排队任务数的上限
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * 探测媒体信息、截帧等短任务的默认超时时间：30分钟；转码等长时间任务默认不限制
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 读取进程输出的线程池，所有调度器共用；每个运行中的进程占用两个线程，线程数随并发数增减，空闲的线程被复用
+     */
+    private static final ExecutorService DRAIN = Executors.newCachedThreadPool(daemon("ffmpeg-output-"));
+
+    private static volatile FFmpegScheduler defaultScheduler;
+
+    /**
+     * 同时运行的进程数上限
+     */
+    private final int concurrency;
+    /**
+     * 排队任务数的上限
+     */
+    private final int queueCapacity;
+
+    private final ThreadPoolExecutor executor;
+    /**
+     * 运行长时间任务的线程池，不限制线程数
+     */
+    private final ExecutorService longRunningExecutor = Executors.newCachedThreadPool(daemon("ffmpeg-long-running-"));
+    /**
+     * 已接收(排队或运行中)的任务占用的名额，总数为 concurrency + queueCapacity
+     */
+    private final Semaphore slots;
+    private final Set<Job> running = ConcurrentHashMap.newKeySet();
+    private final Set<Job> longRunning = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 每个输出流保留的最后行数
+     */
+    private volatile int tailLines = OutputCapture.DEFAULT_TAIL_LINES;
+    /**
+     * 全部输出日志的前几行
+     */
+    private volatile int logHead = OutputCapture.DEFAULT_LOG_HEAD;
+    /**
+     * 之后每隔多少行输出一行日志
+     */
+    private volatile int logEvery = OutputCapture.DEFAULT_LOG_EVERY;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public FFmpegScheduler() {
+        this(DEFAULT_CONCURRENCY, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param concurrency 同时运行的进程数上限
+     * @param queueCapacity 排队任务数的上限
+     */
+    public FFmpegScheduler(int concurrency, int queueCapacity) {
+        if (concurrency <= 0 || queueCapacity < 0) {
+            throw new RuntimeException("并发数必须大于0，队列长度不能为负数：" + concurrency + "，" + queueCapacity);
+        }
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.slots = new Semaphore(concurrency + queueCapacity);
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), daemon("ffmpeg-worker-"));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 默认的调度器，第一次使用时创建；JVM退出时由 ProcessRegistry 结束其中所有的进程
+     * @return
+     */
+    public static FFmpegScheduler getDefault() {
+        if (defaultScheduler == null) {
+            synchronized (FFmpegScheduler.class) {
+                if (defaultScheduler == null) {
+                    defaultScheduler = new FFmpegScheduler();
+                }
+            }
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * 提交一条命令，队列已满时阻塞直到有空位
+     * @param command 完整的命令，第一个元素是可执行程序的路径
+     * @param priority 优先级
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit
+     * @return 完成时为进程的标准错误和标准输出中保留的行(按行拼接，不含换行符，见 OutputCapture)；超时时以 TimeoutException 结束；
+     * cancel 会结束正在运行的进程
+     */
+    public CompletableFuture<String> submit(List<String> command, JobPriorityEnum priority, long timeout, TimeUnit unit) {
+        return submit(command, priority, timeout, unit, null);
+    }
+
+    /**
+     * 提交一条命令，队列已满时阻塞直到有空位
+     * @param command 完整的命令，第一个元素是可执行程序的路径
+     * @param priority 优先级
+     * @param timeout 超时时间，小于等于0表示不限制
+     * @param unit
+     * @param outputListener 逐行接收进程的标准输出，如解析 -progress pipe:1 的 ProgressParser；
+     *                       不为空时标准输出只交给它处理，不计入返回的结果
+     * @return
+     */
+    public CompletableFuture<String> submit(List<String> command, JobPriorityEnum priority, long timeout, TimeUnit unit,
+                                            Consumer<String> outputListener) {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return enqueue(command, priority, timeout, unit, outputListener);
+    }
+
+    /**
+     * 提交一条命令，队列已满时不等待，直接以 RejectedExecutionException 结束
+     * @param command
+     * @param priority
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public CompletableFuture<String> trySubmit(List<String> command, JobPriorityEnum priority, long timeout, TimeUnit unit) {
+        if (!slots.tryAcquire()) {
+            rejected.incrementAndGet();
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(new RejectedExecutionException("FFmpeg任务队列已满：" + queueCapacity));
+            return future;
+        }
+        return enqueue(command, priority, timeout, unit, null);
+    }
+
+    /**
+     * 同步执行一条命令，等待执行完成
+     * @param command
+     * @param priority
+     * @param timeout
+     * @param unit
+     * @return 进程的标准错误和标准输出
+     * @throws Exception 执行失败、超时或被中断
+     */
+    public String execute(List<String> command, JobPriorityEnum priority, long timeout, TimeUnit unit) throws Exception {
+        CompletableFuture<String> future = submit(command, priority, timeout, unit);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * 提交一条不会自行结束(或运行时间无法预估)的命令，如直播转推
+     * 不占用并发名额、不排队、不设超时，立即在单独的线程中启动；通过返回值的 cancel 结束进程
+     * @param command 完整的命令，第一个元素是可执行程序的路径
+     * @param outputListener 逐行接收进程的标准输出，可以为空
+     * @return
+     */
+    public CompletableFuture<String> submitLongRunning(List<String> command, Consumer<String> outputListener) {
+        Job job = new Job(new ArrayList<>(command), JobPriorityEnum.NORMAL, 0, sequence.getAndIncrement(), outputListener, false);
+        try {
+            longRunningExecutor.execute(job);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            job.future.completeExceptionally(e);
+            return job.future;
+        }
+        submitted.incrementAndGet();
+        return job.future;
+    }
+
+    private CompletableFuture<String> enqueue(List<String> command, JobPriorityEnum priority, long timeout, TimeUnit unit,
+                                              Consumer<String> outputListener) {
+        Job job = new Job(new ArrayList<>(command), priority == null ? JobPriorityEnum.NORMAL : priority,
+                timeout > 0 ? unit.toMillis(timeout) : 0, sequence.getAndIncrement(), outputListener, true);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            rejected.incrementAndGet();
+            job.future.completeExceptionally(e);
+            return job.future;
+        }
+        submitted.incrementAndGet();
+        return job.future;
+    }
+
+    /**
+     * 设置之后提交的任务读取进程输出的方式
+     * @param tailLines 每个输出流保留的最后行数
+     * @param logHead 全部输出日志的前几行
+     * @param logEvery 之后每隔多少行输出一行日志，小于等于0时不再输出
+     */
+    public void setOutputCapture(int tailLines, int logHead, int logEvery) {
+        this.tailLines = tailLines;
+        this.logHead = logHead;
+        this.logEvery = logEvery;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * 已提交的任务数
+     * @return
+     */
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * 正常结束的任务数
+     * @return
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * 执行出错的任务数
+     * @return
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * 超时被结束的任务数
+     * @return
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * 因队列已满或调度器已关闭被拒绝的任务数
+     * @return
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * 正在运行的进程数
+     * @return
+     */
+    public int runningCount() {
+        return running.size();
+    }
+
+    /**
+     * 正在运行的长时间任务(submitLongRunning)数，不计入 runningCount
+     * @return
+     */
+    public int longRunningCount() {
+        return longRunning.size();
+    }
+
+    /**
+     * 排队等待的任务数
+     * @return
+     */
+    public int queuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 不再接收新任务，已提交的任务继续执行
+     */
+    public void shutdown() {
+        executor.shutdown();
+        longRunningExecutor.shutdown();
+    }
+
+    /**
+     * 不再接收新任务，取消排队的任务并结束正在运行的进程
+     */
+    public void shutdownNow() {
+        for (Runnable r : executor.shutdownNow()) {
+            Job job = (Job) r;
+            job.future.cancel(false);
+            slots.release();
+        }
+        longRunningExecutor.shutdown();
+        for (Job job : running) {
+            job.future.cancel(false);
+        }
+        for (Job job : longRunning) {
+            job.future.cancel(false);
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 一条排队或运行中的命令
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        private final List<String> command;
+        private final JobPriorityEnum priority;
+        private final long timeoutMillis;
+        private final long seq;
+        private final Consumer<String> outputListener;
+        /**
+         * 是否占用并发名额，长时间任务为 false
+         */
+        private final boolean bounded;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private volatile Process process;
+
+        Job(List<String> command, JobPriorityEnum priority, long timeoutMillis, long seq, Consumer<String> outputListener,
+            boolean bounded) {
+            this.command = command;
+            this.bounded = bounded;
+            this.priority = priority;
+            this.timeoutMillis = timeoutMillis;
+            this.seq = seq;
+            this.outputListener = outputListener;
+            // 取消时结束正在运行的进程
+            future.whenComplete((r, e) -> {
+                Process p = process;
+                if (future.isCancelled() && p != null && p.isAlive()) {
+                    p.destroyForcibly();
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Job o) {
+            int c = priority.getCode().compareTo(o.priority.getCode());
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+
+        @Override
+        public void run() {
+            Set<Job> jobs = bounded ? running : longRunning;
+            if (future.isDone()) {
+                releaseSlot();
+                return;
+            }
+            jobs.add(this);
+            Process p = null;
+            try {
+                p = new ProcessBuilder(command).start();
+                if (!ProcessRegistry.register(p)) {
+                    fail(p, new RejectedExecutionException("JVM正在退出，不再执行FFmpeg命令"));
+                    return;
+                }
+                process = p;
+                if (future.isCancelled()) {
+                    p.destroyForcibly();
+                }
+                if (outputListener instanceof ProgressParser) {
+                    ((ProgressParser) outputListener).begin();
+                }
+                OutputCapture error = new OutputCapture(p.getErrorStream(), tailLines, OutputCapture.DEFAULT_KEEP, logHead, logEvery);
+                OutputCapture output = outputListener == null
+                        ? new OutputCapture(p.getInputStream(), tailLines, OutputCapture.DEFAULT_KEEP, logHead, logEvery)
+                        : new OutputCapture(p.getInputStream(), 0, null, 0, 0, outputListener);
+                Future<?> errorDrained = DRAIN.submit(error);
+                Future<?> outputDrained = DRAIN.submit(output);
+                boolean exited;
+                if (timeoutMillis > 0) {
+                    exited = p.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    p.waitFor();
+                    exited = true;
+                }
+                if (!exited) {
+                    p.destroyForcibly();
+                    timedOut.incrementAndGet();
+                    future.completeExceptionally(new TimeoutException("FFmpeg命令执行超时(" + timeoutMillis + "ms)：" + command));
+                    return;
+                }
+                errorDrained.get();
+                outputDrained.get();
+                String result = outputListener == null ? error.text() + output.text() : error.text();
+                if (future.complete(result)) {
+                    completed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(p, e);
+            } catch (Exception e) {
+                fail(p, e);
+            } finally {
+                ProcessRegistry.deregister(p);
+                jobs.remove(this);
+                releaseSlot();
+            }
+        }
+
+        private void releaseSlot() {
+            if (bounded) {
+                slots.release();
+            }
+        }
+
+        private void fail(Process p, Exception e) {
+            if (p != null && p.isAlive()) {
+                p.destroyForcibly();
+            }
+            if (future.completeExceptionally(e)) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 01:45.
+ * @description: 媒体信息的缓存
+ * 缓存 ffmpeg -i 输出的媒体信息文本，同一个文件重复解析视频、音频信息时不再重复启动 ffmpeg 进程。
+ * 默认按 路径+大小+修改时间 区分文件，文件被修改后自然失效；开启 contentHash 时按 文件大小+开头和末尾各 HASH_CHUNK 字节的 SHA-256 区分，
+ * 适合从流中解析(每次写入新的临时文件)的场景，每次查询最多读取 2*HASH_CHUNK 字节；媒体文件的头信息和索引都在开头或末尾，
+ * 只有中间的数据不同、大小相同的两个文件会被视为同一个文件。读取文件出错时不使用缓存，直接解析。
+ * 内存中按最近最少使用(LRU)的顺序淘汰，条数、字符数都有上限；指定 diskDir 时同时写入磁盘，重启后仍然有效，
+ * 磁盘缓存使用相同的条数、字符数上限，每次写入后按最后访问时间(文件修改时间)删除最旧的文件。
+ * 同一个文件同时有多个查询时只启动一次 ffmpeg 进程。
+ */
+@Log4j2
+public class MetaInfoCache {
+
+    /**
+     * 默认最多缓存的条数
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    /**
+     * 默认最多缓存的字符数(约 16MB)
+     */
+    public static final long DEFAULT_MAX_CHARS = 8L << 20;
+
+    /**
+     * 计算内容摘要时读取的开头、末尾的字节数
+     */
+    public static final int HASH_CHUNK = 64 * 1024;
+
+    private static final String DISK_SUFFIX = ".meta";
+
+    /**
+     * 最多缓存的条数
+     */
+    @Getter
+    private final int maxEntries;
+    /**
+     * 最多缓存的字符数
+     */
+    @Getter
+    private final long maxChars;
+    /**
+     * 是否按文件内容(大小+开头和末尾的 SHA-256)区分文件
+     */
+    @Getter
+    private final boolean contentHash;
+    /**
+     * 磁盘缓存目录，为空时只缓存在内存中
+     */
+    @Getter
+    private final File diskDir;
+
+    /**
+     * 当前缓存的字符数
+     */
+    private long chars;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    /**
+     * 等待其他线程正在进行的解析的次数，不计入命中率
+     */
+    private final AtomicLong sharedLoads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    /**
+     * 淘汰磁盘缓存时加锁，不阻塞内存缓存的读写
+     */
+    private final Object diskLock = new Object();
+
+    /**
+     * 按访问顺序排列，最久未使用的在最前面
+     */
+    private final Map<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 正在解析的文件，同一个文件的并发查询共用一次解析
+     */
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+
+    public MetaInfoCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS, false, null);
+    }
+
+    /**
+     * @param maxEntries 最多缓存的条数
+     * @param maxChars 最多缓存的字符数
+     * @param contentHash 是否按文件内容(大小+开头和末尾的 SHA-256)区分文件
+     * @param diskDir 磁盘缓存目录，为空时只缓存在内存中
+     */
+    public MetaInfoCache(int maxEntries, long maxChars, boolean contentHash, File diskDir) {
+        if (maxEntries <= 0 || maxChars <= 0) {
+            throw new RuntimeException("缓存的条数、字符数必须大于0");
+        }
+        if (diskDir != null && !diskDir.isDirectory() && !diskDir.mkdirs()) {
+            throw new RuntimeException("无法创建磁盘缓存目录：" + diskDir.getAbsolutePath());
+        }
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        this.contentHash = contentHash;
+        this.diskDir = diskDir;
+    }
+
+    /**
+     * 获取文件的媒体信息，缓存中没有时调用 probe 解析并缓存；解析结果为空时不缓存
+     * @param file 媒体文件
+     * @param probe 解析媒体信息，如启动 ffmpeg -i
+     * @return
+     */
+    public String get(File file, Function<File, String> probe) {
+        String key = key(file);
+        if (key == null) {
+            // 无法读取文件内容时不缓存，由 probe 自行处理
+            misses.incrementAndGet();
+            return probe.apply(file);
+        }
+        String value = getCached(key);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            // 其他线程正在解析同一个文件，结果不是来自缓存，单独计数
+            sharedLoads.incrementAndGet();
+            return running.join();
+        }
+        try {
+            value = getCached(key);
+            if (value == null) {
+                misses.incrementAndGet();
+                value = probe.apply(file);
+                if (value != null) {
+                    put(key, value);
+                    writeDisk(key, value);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key);
+        }
+    }
+
+    /**
+     * 依次从内存、磁盘中查找
+     */
+    private String getCached(String key) {
+        String value;
+        synchronized (this) {
+            value = entries.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        value = readDisk(key);
+        if (value != null) {
+            diskHits.incrementAndGet();
+            put(key, value);
+        }
+        return value;
+    }
+
+    private synchronized void put(String key, String value) {
+        String old = entries.put(key, value);
+        if (old != null) {
+            chars -= old.length();
+        }
+        chars += value.length();
+        Iterator<String> it = entries.values().iterator();
+        while ((entries.size() > maxEntries || chars > maxChars) && it.hasNext()) {
+            chars -= it.next().length();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 从缓存中移除文件的媒体信息，包括磁盘缓存
+     * @param file
+     */
+    public void invalidate(File file) {
+        String key = key(file);
+        if (key == null) {
+            return;
+        }
+        synchronized (this) {
+            String old = entries.remove(key);
+            if (old != null) {
+                chars -= old.length();
+            }
+        }
+        if (diskDir != null) {
+            FileUtils.deleteQuietly(diskFile(key));
+        }
+    }
+
+    /**
+     * 清空缓存，包括磁盘缓存
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            chars = 0;
+        }
+        File[] files = diskDir == null ? null : diskDir.listFiles((dir, name) -> name.endsWith(DISK_SUFFIX));
+        if (files != null) {
+            for (File f : files) {
+                FileUtils.deleteQuietly(f);
+            }
+        }
+    }
+
+    /**
+     * 内存中缓存的条数
+     * @return
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 当前缓存的字符数
+     * @return
+     */
+    public synchronized long getChars() {
+        return chars;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 等待其他线程正在进行的解析的次数
+     * @return
+     */
+    public long getSharedLoads() {
+        return sharedLoads.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * 磁盘缓存淘汰的文件个数
+     * @return
+     */
+    public long getDiskEvictions() {
+        return diskEvictions.get();
+    }
+
+    /**
+     * 命中率(含磁盘命中)，等待其他线程解析的查询不计入
+     * @return
+     */
+    public double hitRate() {
+        long hit = hits.get() + diskHits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return 读取文件内容出错时为空
+     */
+    private String key(File file) {
+        if (contentHash) {
+            try {
+                return "content:" + file.length() + ":" + sha256(file);
+            } catch (IOException e) {
+                log.error("--- 读取媒体文件出错，不使用缓存：" + file.getAbsolutePath() + " --- 错误信息：" + e.getMessage());
+                return null;
+            }
+        }
+        return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    private File diskFile(String key) {
+        return new File(diskDir, hex(digest().digest(key.getBytes(StandardCharsets.UTF_8))) + DISK_SUFFIX);
+    }
+
+    /**
+     * 磁盘缓存的第一行是完整的键，用于排除文件名冲突
+     */
+    private String readDisk(String key) {
+        if (diskDir == null) {
+            return null;
+        }
+        File f = diskFile(key);
+        if (!f.isFile()) {
+            return null;
+        }
+        try {
+            String text = FileUtils.readFileToString(f, StandardCharsets.UTF_8);
+            int eol = text.indexOf('\n');
+            if (eol < 0 || !key.equals(text.substring(0, eol))) {
+                return null;
+            }
+            // 记录访问时间，淘汰时保留最近使用的文件
+            f.setLastModified(System.currentTimeMillis());
+            return text.substring(eol + 1);
+        } catch (IOException e) {
+            log.error("--- 读取媒体信息磁盘缓存出错！--- 错误信息：" + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 先写入临时文件再改名，其他进程不会读到写了一半的缓存
+     */
+    private void writeDisk(String key, String value) {
+        if (diskDir == null) {
+            return;
+        }
+        File f = diskFile(key);
+        File tmp = new File(diskDir, f.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileUtils.writeStringToFile(tmp, key + "\n" + value, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(tmp);
+            log.error("--- 写入媒体信息磁盘缓存出错！--- 错误信息：" + e.getMessage());
+        }
+        pruneDisk();
+    }
+
+    /**
+     * 磁盘缓存超过条数或字符数(按文件字节数近似)上限时，从最久未访问的文件开始删除
+     */
+    private void pruneDisk() {
+        synchronized (diskLock) {
+            pruneDiskLocked();
+        }
+    }
+
+    private void pruneDiskLocked() {
+        File[] files = diskDir.listFiles((dir, name) -> name.endsWith(DISK_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        long[] modified = new long[files.length];
+        for (int i = 0; i < files.length; i++) {
+            total += files[i].length();
+        }
+        if (files.length <= maxEntries && total <= maxChars) {
+            return;
+        }
+        // 先取出修改时间再排序，排序过程中文件被访问也不会破坏比较的一致性
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> modified[i]));
+        int count = files.length;
+        for (int i = 0; i < order.length && (count > maxEntries || total > maxChars); i++) {
+            File f = files[order[i]];
+            long length = f.length();
+            if (f.delete()) {
+                count--;
+                total -= length;
+                diskEvictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 文件开头和末尾各 HASH_CHUNK 字节的 SHA-256，文件不超过 2*HASH_CHUNK 时为整个文件的 SHA-256
+     */
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest = digest();
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            byte[] buffer = new byte[(int) Math.min(length, HASH_CHUNK)];
+            in.readFully(buffer);
+            digest.update(buffer);
+            long tail = Math.max(length - HASH_CHUNK, buffer.length);
+            if (tail < length) {
+                byte[] end = new byte[(int) (length - tail)];
+                in.seek(tail);
+                in.readFully(end);
+                digest.update(end);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("不支持 SHA-256");
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 00:50.
+ * @description: 读取进程的一个输出流，只保留有限的内容
+ * 保留最后 tailLines 行(环形缓冲区)，以及匹配 keep 的行(如媒体信息中的 Duration、Stream 行，最多 MAX_KEPT_LINES 行)，
+ * 长时间转码时内存占用不会随输出增长；日志按采样输出：前 logHead 行全部输出，之后每 logEvery 行输出一行。
+ * text() 按原来的顺序拼接保留的行(不含换行符)，输出行数不超过 tailLines 时与完整输出一致
+ */
+@Log4j2
+public class OutputCapture implements Runnable {
+
+    /**
+     * 默认保留的最后行数
+     */
+    public static final int DEFAULT_TAIL_LINES = 200;
+    /**
+     * 默认全部输出日志的前几行
+     */
+    public static final int DEFAULT_LOG_HEAD = 64;
+    /**
+     * 默认之后每隔多少行输出一行日志
+     */
+    public static final int DEFAULT_LOG_EVERY = 100;
+    /**
+     * 默认额外保留的行：MediaUtils 解析媒体信息用到的时长、音视频流信息
+     */
+    public static final Pattern DEFAULT_KEEP = Pattern.compile("Duration: |Stream #");
+    /**
+     * 匹配 keep 的行最多保留的行数
+     */
+    public static final int MAX_KEPT_LINES = 256;
+
+    private final InputStream inputStream;
+    private final Pattern keep;
+    private final int logHead;
+    private final int logEvery;
+    /**
+     * 逐行回调，为空时不回调
+     */
+    private final Consumer<String> listener;
+
+    /**
+     * 环形缓冲区，保存最后 tail.length 行
+     */
+    private final String[] tail;
+    /**
+     * 匹配 keep 的行及其行号
+     */
+    private final List<String> kept = new ArrayList<>();
+    private final List<Long> keptIndex = new ArrayList<>();
+    /**
+     * 已读取的行数
+     */
+    private volatile long lines;
+
+    public OutputCapture(InputStream inputStream) {
+        this(inputStream, DEFAULT_TAIL_LINES, DEFAULT_KEEP, DEFAULT_LOG_HEAD, DEFAULT_LOG_EVERY);
+    }
+
+    /**
+     * @param inputStream 要读取的输出流
+     * @param tailLines 保留的最后行数
+     * @param keep 额外保留的行，为空时不保留
+     * @param logHead 全部输出日志的前几行
+     * @param logEvery 之后每隔多少行输出一行日志，小于等于0时不再输出
+     */
+    public OutputCapture(InputStream inputStream, int tailLines, Pattern keep, int logHead, int logEvery) {
+        this(inputStream, tailLines, keep, logHead, logEvery, null);
+    }
+
+    /**
+     * @param inputStream 要读取的输出流
+     * @param tailLines 保留的最后行数
+     * @param keep 额外保留的行，为空时不保留
+     * @param logHead 全部输出日志的前几行
+     * @param logEvery 之后每隔多少行输出一行日志，小于等于0时不再输出
+     * @param listener 每读取一行回调一次，如解析进度(ProgressParser)
+     */
+    public OutputCapture(InputStream inputStream, int tailLines, Pattern keep, int logHead, int logEvery, Consumer<String> listener) {
+        this.inputStream = inputStream;
+        this.listener = listener;
+        this.tail = new String[Math.max(1, tailLines)];
+        this.keep = keep;
+        this.logHead = logHead;
+        this.logEvery = logEvery;
+    }
+
+    @Override
+    public void run() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                accept(line);
+                if (listener != null) {
+                    listener.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            log.error("--- 读取输入流出错了！--- 错误信息：" + e.getMessage());
+        }
+    }
+
+    private synchronized void accept(String line) {
+        long n = lines;
+        if (n < logHead || (logEvery > 0 && (n - logHead) % logEvery == 0)) {
+            log.info(line);
+        }
+        if (keep != null && kept.size() < MAX_KEPT_LINES && keep.matcher(line).find()) {
+            kept.add(line);
+            keptIndex.add(n);
+        }
+        tail[(int) (n % tail.length)] = line;
+        lines = n + 1;
+    }
+
+    /**
+     * 已读取的行数
+     * @return
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * 没有保留的行数
+     * @return
+     */
+    public synchronized long getDropped() {
+        long first = Math.max(0, lines - tail.length);
+        long keptBefore = 0;
+        for (long index : keptIndex) {
+            if (index < first) {
+                keptBefore++;
+            }
+        }
+        return first - keptBefore;
+    }
+
+    /**
+     * 按原来的顺序拼接保留的行，不含换行符
+     * @return
+     */
+    public synchronized String text() {
+        StringBuilder sb = new StringBuilder();
+        long first = Math.max(0, lines - tail.length);
+        // 先输出环形缓冲区之前被保留的行
+        for (int i = 0; i < kept.size() && keptIndex.get(i) < first; i++) {
+            sb.append(kept.get(i));
+        }
+        for (long n = first; n < lines; n++) {
+            sb.append(tail[(int) (n % tail.length)]);
+        }
+        return sb.toString();
+    }
+}
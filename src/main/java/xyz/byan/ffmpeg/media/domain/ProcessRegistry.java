@@ -0,0 +1,129 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 00:20.
+ * @description: 存活的FFmpeg子进程登记表
+ * 进程启动后登记，结束后注销，登记表中只保留仍在运行的进程；整个JVM只注册一个关闭钩子，
+ * JVM退出时先正常结束(destroy)所有登记的进程，等待宽限期后强制结束(destroyForcibly)仍未退出的进程。
+ * 开始关闭后不再接受新的进程，新启动的进程会被直接结束
+ */
+@Log4j2
+public class ProcessRegistry {
+
+    /**
+     * 默认宽限期：3秒
+     */
+    public static final long DEFAULT_GRACE_MILLIS = 3000;
+
+    private static final Set<Process> LIVE = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong REGISTERED = new AtomicLong();
+    private static final AtomicLong KILLED = new AtomicLong();
+
+    private static volatile long graceMillis = DEFAULT_GRACE_MILLIS;
+    private static volatile boolean closing;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(ProcessRegistry::destroyAll, "ffmpeg-process-killer"));
+    }
+
+    private ProcessRegistry() {
+    }
+
+    /**
+     * 登记一个刚启动的进程
+     * @param process
+     * @return JVM正在退出时返回false，进程已被结束
+     */
+    public static boolean register(Process process) {
+        if (closing) {
+            process.destroyForcibly();
+            return false;
+        }
+        LIVE.add(process);
+        REGISTERED.incrementAndGet();
+        // 登记的同时关闭钩子可能已经开始执行
+        if (closing && LIVE.remove(process)) {
+            process.destroyForcibly();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 注销一个已结束(或不再需要管理)的进程
+     * @param process
+     */
+    public static void deregister(Process process) {
+        if (process != null) {
+            LIVE.remove(process);
+        }
+    }
+
+    /**
+     * 正在运行的进程数
+     * @return
+     */
+    public static int liveCount() {
+        return LIVE.size();
+    }
+
+    /**
+     * 累计登记的进程数
+     * @return
+     */
+    public static long registeredCount() {
+        return REGISTERED.get();
+    }
+
+    /**
+     * 关闭时被强制结束的进程数
+     * @return
+     */
+    public static long killedCount() {
+        return KILLED.get();
+    }
+
+    /**
+     * 设置JVM退出时等待进程正常结束的宽限期
+     * @param millis
+     */
+    public static void setGracePeriod(long millis) {
+        graceMillis = Math.max(0, millis);
+    }
+
+    /**
+     * 结束所有登记的进程：先 destroy，宽限期内未退出的再 destroyForcibly
+     */
+    static void destroyAll() {
+        closing = true;
+        if (LIVE.isEmpty()) {
+            return;
+        }
+        log.info("--- JVM退出，结束 " + LIVE.size() + " 个FFmpeg进程 ---");
+        for (Process process : LIVE) {
+            process.destroy();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        for (Process process : LIVE) {
+            long left = deadline - System.nanoTime();
+            try {
+                if (left <= 0 || !process.waitFor(left, TimeUnit.NANOSECONDS)) {
+                    process.destroyForcibly();
+                    KILLED.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                KILLED.incrementAndGet();
+            }
+            LIVE.remove(process);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package xyz.byan.ffmpeg.media.domain;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 01:25.
+ * @description: 逐行解析 ffmpeg -progress pipe:1 的输出
+ * 输出由若干组 key=value 组成，每组以 progress=continue 或 progress=end 结束，每组解析为一个 FFmpegProgress 通知监听器；
+ * 已知总时长时根据处理速度(speed)计算预计剩余时间，速度未知时按已用时间等比例估算。
+ * ffmpeg 卡住(如输入阻塞)时不再输出进度，watch 之后由看门狗定时检查：超过 checkMillis 没有收到进度时补发一个
+ * watchdog 为 true 的进度，stalled 持续增大；设置了 stallTimeoutMillis 时，已输出时长超过该时间没有增长就取消任务(结束进程)
+ */
+@Log4j2
+public class ProgressParser implements Consumer<String> {
+
+    /**
+     * 在命令中加入进度输出的参数，需要放在输入、输出文件之前
+     */
+    public static final String[] ARGS = {"-progress", "pipe:1"};
+    /**
+     * 看门狗默认的检查间隔，ffmpeg 默认每 0.5 秒输出一次进度
+     */
+    public static final long DEFAULT_CHECK_MILLIS = 2000;
+
+    /**
+     * 看门狗线程，所有解析器共用
+     */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ffmpeg-progress-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final FFmpegProgressListener listener;
+    private final Long duration;
+    /**
+     * 已输出时长持续没有增长超过该时间时取消任务，小于等于0表示只通知不取消
+     */
+    private final long stallTimeoutMillis;
+    private long start = System.currentTimeMillis();
+    /**
+     * 进程是否已经启动，排队中的任务不算卡住
+     */
+    private boolean started;
+
+    private FFmpegProgress current = new FFmpegProgress();
+    /**
+     * 最近一次通知的进度
+     */
+    private FFmpegProgress last;
+    private long lastOutTime = -1;
+    private long lastAdvance = start;
+    /**
+     * 最近一次通知的时间
+     */
+    private long lastPublish = start;
+    private ScheduledFuture<?> watchdog;
+
+    /**
+     * @param listener 监听器
+     * @param duration 输出的总时长，单位：毫秒；未知时为空
+     */
+    public ProgressParser(FFmpegProgressListener listener, Long duration) {
+        this(listener, duration, 0);
+    }
+
+    /**
+     * @param listener 监听器
+     * @param duration 输出的总时长，单位：毫秒；未知时为空
+     * @param stallTimeoutMillis 已输出时长持续没有增长超过该时间时取消任务，小于等于0表示只通知不取消
+     */
+    public ProgressParser(FFmpegProgressListener listener, Long duration, long stallTimeoutMillis) {
+        this.listener = listener;
+        this.duration = duration != null && duration > 0 ? duration : null;
+        this.stallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    /**
+     * 开始监视任务，每 DEFAULT_CHECK_MILLIS 检查一次，任务结束后自动停止
+     * @param job 提交到调度器后返回的 future，cancel 时结束ffmpeg进程
+     */
+    public void watch(Future<?> job) {
+        watch(job, DEFAULT_CHECK_MILLIS);
+    }
+
+    /**
+     * 开始监视任务，任务结束后自动停止
+     * @param job 提交到调度器后返回的 future，cancel 时结束ffmpeg进程
+     * @param checkMillis 检查间隔
+     */
+    public synchronized void watch(Future<?> job, long checkMillis) {
+        if (watchdog != null) {
+            throw new RuntimeException("进度解析器已经在监视任务");
+        }
+        watchdog = WATCHDOG.scheduleWithFixedDelay(() -> check(job, checkMillis), checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 进程启动时由调度器调用，从这时开始计算耗时和卡顿时间
+     */
+    synchronized void begin() {
+        start = System.currentTimeMillis();
+        lastAdvance = start;
+        lastPublish = start;
+        started = true;
+    }
+
+    private synchronized void check(Future<?> job, long checkMillis) {
+        if (job.isDone()) {
+            watchdog.cancel(false);
+            return;
+        }
+        if (!started) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long stalled = now - lastAdvance;
+        if (now - lastPublish >= checkMillis) {
+            // ffmpeg 没有输出进度，补发一个
+            FFmpegProgress progress = new FFmpegProgress();
+            if (last != null) {
+                progress.setFrame(last.getFrame());
+                progress.setFps(last.getFps());
+                progress.setOutTime(last.getOutTime());
+                progress.setSpeed(last.getSpeed());
+                progress.setBitRate(last.getBitRate());
+                progress.setTotalSize(last.getTotalSize());
+                progress.setPercent(last.getPercent());
+            }
+            progress.setDuration(duration);
+            progress.setElapsed(now - start);
+            progress.setStalled(stalled);
+            progress.setWatchdog(true);
+            notifyListener(progress);
+        }
+        if (stallTimeoutMillis > 0 && stalled >= stallTimeoutMillis) {
+            log.error("--- FFmpeg已经 " + stalled + "ms 没有进展，结束任务 ---");
+            job.cancel(true);
+            watchdog.cancel(false);
+        }
+    }
+
+    @Override
+    public void accept(String line) {
+        int eq = line.indexOf('=');
+        if (eq <= 0) {
+            return;
+        }
+        String key = line.substring(0, eq).trim();
+        String value = line.substring(eq + 1).trim();
+        try {
+            switch (key) {
+                case "frame":
+                    current.setFrame(Long.parseLong(value));
+                    break;
+                case "fps":
+                    current.setFps(Float.parseFloat(value));
+                    break;
+                case "out_time_us":
+                case "out_time_ms":
+                    // 两者的单位实际都是微秒
+                    if (!"N/A".equals(value)) {
+                        current.setOutTime(Long.parseLong(value) / 1000);
+                    }
+                    break;
+                case "speed":
+                    if (value.endsWith("x")) {
+                        current.setSpeed(Float.parseFloat(value.substring(0, value.length() - 1)));
+                    }
+                    break;
+                case "bitrate":
+                    if (value.endsWith("kbits/s")) {
+                        current.setBitRate(Float.parseFloat(value.substring(0, value.length() - 7)));
+                    }
+                    break;
+                case "total_size":
+                    if (!"N/A".equals(value)) {
+                        current.setTotalSize(Long.parseLong(value));
+                    }
+                    break;
+                case "progress":
+                    current.setEnd("end".equals(value));
+                    publish();
+                    break;
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            log.debug("--- 无法解析的进度信息：" + line);
+        }
+    }
+
+    private synchronized void publish() {
+        FFmpegProgress progress = current;
+        current = new FFmpegProgress();
+        long now = System.currentTimeMillis();
+        long elapsed = now - start;
+        Long outTime = progress.getOutTime();
+        if (outTime == null && lastOutTime >= 0) {
+            // 本组为 N/A 时沿用上一组的值
+            outTime = lastOutTime;
+            progress.setOutTime(outTime);
+        }
+        if (outTime != null && outTime > lastOutTime) {
+            lastOutTime = outTime;
+            lastAdvance = now;
+        }
+        progress.setElapsed(elapsed);
+        progress.setStalled(now - lastAdvance);
+        progress.setDuration(duration);
+        if (duration != null && outTime != null) {
+            long done = Math.min(outTime, duration);
+            progress.setPercent(progress.isEnd() ? 100F : done * 100F / duration);
+            long remaining = duration - done;
+            Float speed = progress.getSpeed();
+            if (progress.isEnd()) {
+                progress.setEta(0L);
+            } else if (speed != null && speed > 0) {
+                progress.setEta((long) (remaining / speed));
+            } else if (done > 0) {
+                progress.setEta(elapsed * remaining / done);
+            }
+        }
+        last = progress;
+        lastPublish = now;
+        if (progress.isEnd() && watchdog != null) {
+            watchdog.cancel(false);
+        }
+        notifyListener(progress);
+    }
+
+    private void notifyListener(FFmpegProgress progress) {
+        try {
+            listener.onProgress(progress);
+        } catch (RuntimeException e) {
+            log.error("--- 进度监听器执行出错！--- 错误信息：" + e.getMessage());
+        }
+    }
+}
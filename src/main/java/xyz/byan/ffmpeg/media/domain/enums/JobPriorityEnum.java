@@ -0,0 +1,28 @@
+package xyz.byan.ffmpeg.media.domain.enums;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 23:40.
+ * @description: FFmpeg任务的优先级，code越小越先执行
+ */
+public enum JobPriorityEnum {
+    INTERACTIVE("交互任务，如截图、读取媒体信息", 0),
+    NORMAL("普通任务", 1),
+    BATCH("批量任务，如视频转码", 2);
+
+    private String name;
+    private Integer code;
+
+    JobPriorityEnum(String name, Integer code) {
+        this.name = name;
+        this.code = code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Integer getCode() {
+        return code;
+    }
+}
@@ -19,6 +19,7 @@ public class AnimatedGifEncoder {
 	protected boolean started = false; // ready to output frames
 	protected OutputStream out;
 	protected BufferedImage image; // current frame
+	protected BufferedImage converted; // reused frame for format conversion
 	protected byte[] pixels; // BGR byte array from frame
 	protected byte[] indexedPixels; // converted frame indexed to palette
 	protected int colorDepth; // number of bit planes
@@ -155,6 +156,7 @@ public class AnimatedGifEncoder {
 		transIndex = 0;
 		out = null;
 		image = null;
+		converted = null;
 		pixels = null;
 		indexedPixels = null;
 		colorTab = null;
@@ -325,12 +327,18 @@ public class AnimatedGifEncoder {
 		int w = image.getWidth();
 		int h = image.getHeight();
 		int type = image.getType();
-		if ((w != width) || (h != height) || (type != BufferedImage.TYPE_3BYTE_BGR)) {
-			// create new image with right size/format
-			BufferedImage temp = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-			Graphics2D g = temp.createGraphics();
+		if ((w != width) || (h != height) || (type != BufferedImage.TYPE_3BYTE_BGR)
+				|| image.getRaster().getDataBuffer().getSize() != width * height * 3) {
+			// convert into a reused image with right size/format
+			if (converted == null || converted.getWidth() != width || converted.getHeight() != height) {
+				converted = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+			}
+			Graphics2D g = converted.createGraphics();
+			g.setColor(Color.BLACK);
+			g.fillRect(0, 0, width, height);
 			g.drawImage(image, 0, 0, null);
-			image = temp;
+			g.dispose();
+			image = converted;
 		}
 		pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
 	}
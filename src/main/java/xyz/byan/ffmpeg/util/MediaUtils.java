@@ -5,9 +5,15 @@ import lombok.extern.log4j.Log4j2;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
+import xyz.byan.ffmpeg.media.domain.FFmpegProgressListener;
+import xyz.byan.ffmpeg.media.domain.FFmpegScheduler;
 import xyz.byan.ffmpeg.media.domain.ImageMetaInfo;
+import xyz.byan.ffmpeg.media.domain.MetaInfoCache;
 import xyz.byan.ffmpeg.media.domain.MusicMetaInfo;
+import xyz.byan.ffmpeg.media.domain.ProcessRegistry;
+import xyz.byan.ffmpeg.media.domain.ProgressParser;
 import xyz.byan.ffmpeg.media.domain.VideoMetaInfo;
+import xyz.byan.ffmpeg.media.domain.enums.JobPriorityEnum;
 import xyz.byan.ffmpeg.media.domain.gif.AnimatedGifEncoder;
 
 import javax.imageio.ImageIO;
@@ -18,6 +24,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -68,6 +76,26 @@ public class MediaUtils {
      */
     private static String FFMPEG_PATH = "/usr/local/bin/ffmpeg";
 
+    /**
+     * 执行FFmpeg命令的调度器，为空时使用 FFmpegScheduler.getDefault()
+     */
+    private static volatile FFmpegScheduler scheduler;
+
+    /**
+     * 视频转换、截取、音频抽取等长时间任务的超时时间，小于等于0表示不限制(默认)
+     */
+    private static volatile long transcodeTimeoutMillis = 0;
+
+    /**
+     * 媒体信息的缓存，为空时每次都启动ffmpeg解析
+     */
+    private static volatile MetaInfoCache metaInfoCache = new MetaInfoCache();
+
+    /**
+     * 带进度的任务中，已输出时长持续没有增长超过该时间时结束FFmpeg进程，小于等于0表示只通知不结束(默认)
+     */
+    private static volatile long stallTimeoutMillis = 0;
+
     /**
      * 视频时长正则匹配式
      * 用于解析视频及音频的时长等信息时使用；
@@ -139,7 +167,7 @@ public class MediaUtils {
         }
         List<String> cmds = new ArrayList<>(1);
         cmds.add("-version");
-        String ffmpegVersionStr = executeCommand(cmds);
+        String ffmpegVersionStr = executeCommand(cmds, JobPriorityEnum.INTERACTIVE, FFmpegScheduler.DEFAULT_TIMEOUT_MILLIS);
         if (StringUtils.isBlank(ffmpegVersionStr)) {
             log.error("--- 工作状态异常，因为ffmpeg命令执行失败！ ---");
             return false;
@@ -149,57 +177,186 @@ public class MediaUtils {
     }
 
     /**
-     * 执行FFmpeg命令
+     * 获取执行FFmpeg命令的调度器
+     * @return
+     */
+    public static FFmpegScheduler getScheduler() {
+        FFmpegScheduler s = scheduler;
+        return s != null ? s : FFmpegScheduler.getDefault();
+    }
+
+    /**
+     * 设置执行FFmpeg命令的调度器，用于调整并发数和队列长度；为空时使用默认调度器
+     * @param ffmpegScheduler
+     */
+    public static void setScheduler(FFmpegScheduler ffmpegScheduler) {
+        scheduler = ffmpegScheduler;
+    }
+
+    /**
+     * 获取视频转换、截取、音频抽取等长时间任务的超时时间
+     * @return 小于等于0表示不限制
+     */
+    public static long getTranscodeTimeoutMillis() {
+        return transcodeTimeoutMillis;
+    }
+
+    /**
+     * 设置视频转换、截取、音频抽取等长时间任务的超时时间，超时后结束FFmpeg进程
+     * @param timeoutMillis 小于等于0表示不限制
+     */
+    public static void setTranscodeTimeoutMillis(long timeoutMillis) {
+        transcodeTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 获取带进度的任务的卡顿超时时间
+     * @return 小于等于0表示只通知不结束
+     */
+    public static long getStallTimeoutMillis() {
+        return stallTimeoutMillis;
+    }
+
+    /**
+     * 设置带进度的任务(传入了进度监听器)的卡顿超时时间，已输出时长持续没有增长超过该时间时结束FFmpeg进程
+     * @param timeoutMillis 小于等于0表示只通知不结束
+     */
+    public static void setStallTimeoutMillis(long timeoutMillis) {
+        stallTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 获取媒体信息的缓存
+     * @return 为空时表示未开启缓存
+     */
+    public static MetaInfoCache getMetaInfoCache() {
+        return metaInfoCache;
+    }
+
+    /**
+     * 设置媒体信息的缓存，如开启磁盘缓存、按文件内容区分文件等
+     * @param cache 为空时关闭缓存
+     */
+    public static void setMetaInfoCache(MetaInfoCache cache) {
+        metaInfoCache = cache;
+    }
+
+    /**
+     * 执行FFmpeg命令，不设超时
      * @param commonds 要执行的FFmpeg命令
      * @return FFmpeg程序在执行命令过程中产生的各信息，执行出错时返回null
      */
     public static String executeCommand(List<String> commonds) {
+        return executeCommand(commonds, JobPriorityEnum.NORMAL, 0);
+    }
+
+    /**
+     * 执行FFmpeg命令，由调度器控制并发数，超过上限时按优先级排队，等待执行完成
+     * @param commonds 要执行的FFmpeg命令
+     * @param priority 优先级
+     * @param timeoutMillis 超时时间，超时后结束FFmpeg进程；小于等于0表示不限制
+     * @return FFmpeg程序在执行命令过程中产生的各信息，执行出错或超时时返回null
+     */
+    public static String executeCommand(List<String> commonds, JobPriorityEnum priority, long timeoutMillis) {
+        return executeCommand(commonds, priority, timeoutMillis, null);
+    }
+
+    /**
+     * 异步执行FFmpeg命令，调度器队列已满时阻塞调用方直到有空位
+     * @param commonds 要执行的FFmpeg命令
+     * @param priority 优先级
+     * @param timeoutMillis 超时时间，超时后结束FFmpeg进程；小于等于0表示不限制
+     * @return 完成时为FFmpeg程序在执行命令过程中产生的各信息；cancel 会结束FFmpeg进程
+     */
+    public static CompletableFuture<String> executeCommandAsync(List<String> commonds, JobPriorityEnum priority, long timeoutMillis) {
+        return executeCommandAsync(commonds, priority, timeoutMillis, null);
+    }
+
+    /**
+     * 执行FFmpeg命令，并通过 -progress pipe:1 实时回调执行进度，等待执行完成
+     * @param commonds 要执行的FFmpeg命令，不需要包含 -progress 参数
+     * @param priority 优先级
+     * @param timeoutMillis 超时时间，超时后结束FFmpeg进程；小于等于0表示不限制
+     * @param progress 进度解析器，为空时不输出进度
+     * @return FFmpeg程序在执行命令过程中产生的各信息(不含进度信息)，执行出错或超时时返回null
+     */
+    public static String executeCommand(List<String> commonds, JobPriorityEnum priority, long timeoutMillis, ProgressParser progress) {
+        return await(executeCommandAsync(commonds, priority, timeoutMillis, progress));
+    }
+
+    /**
+     * 等待命令执行完成，执行出错、超时或被中断时返回null
+     */
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            log.error("--- FFmpeg命令执行被中断！---");
+            return null;
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            log.error("--- FFmpeg命令执行出错！ --- 出错信息： " + cause.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 异步执行FFmpeg命令，并通过 -progress pipe:1 实时回调执行进度
+     * @param commonds 要执行的FFmpeg命令，不需要包含 -progress 参数
+     * @param priority 优先级
+     * @param timeoutMillis 超时时间，超时后结束FFmpeg进程；小于等于0表示不限制
+     * @param progress 进度解析器，为空时不输出进度
+     * @return 完成时为FFmpeg程序在执行命令过程中产生的各信息(不含进度信息)；cancel 会结束FFmpeg进程
+     */
+    public static CompletableFuture<String> executeCommandAsync(List<String> commonds, JobPriorityEnum priority, long timeoutMillis,
+                                                                ProgressParser progress) {
+        return submitCommand(commonds, priority, timeoutMillis, progress, false);
+    }
+
+    /**
+     * 异步执行不会自行结束的FFmpeg命令，如直播转推
+     * 不占用调度器的并发名额、不排队、不设超时(见 FFmpegScheduler.submitLongRunning)，通过返回值的 cancel 结束FFmpeg进程
+     * @param commonds 要执行的FFmpeg命令
+     * @param progress 进度解析器，为空时不输出进度
+     * @return 进程结束时为FFmpeg程序在执行命令过程中产生的各信息
+     */
+    public static CompletableFuture<String> executeLongRunningAsync(List<String> commonds, ProgressParser progress) {
+        return submitCommand(commonds, null, 0, progress, true);
+    }
+
+    private static CompletableFuture<String> submitCommand(List<String> commonds, JobPriorityEnum priority, long timeoutMillis,
+                                                           ProgressParser progress, boolean longRunning) {
         if (CollectionUtils.isEmpty(commonds)) {
             log.error("--- 指令执行失败，因为要执行的FFmpeg指令为空！ ---");
-            return null;
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("要执行的FFmpeg指令为空"));
+            return future;
         }
         LinkedList<String> ffmpegCmds = new LinkedList<>(commonds);
+        if (progress != null) {
+            // 全局参数，放在输入文件之前
+            ffmpegCmds.addAll(0, Arrays.asList(ProgressParser.ARGS));
+        }
         ffmpegCmds.addFirst(FFMPEG_PATH); // 设置ffmpeg程序所在路径
         log.info("--- 待执行的FFmpeg指令为：---" + ffmpegCmds);
 
-        Runtime runtime = Runtime.getRuntime();
-        Process ffmpeg = null;
-        try {
-            // 执行ffmpeg指令
-            ProcessBuilder builder = new ProcessBuilder();
-            builder.command(ffmpegCmds);
-            ffmpeg = builder.start();
-            log.info("--- 开始执行FFmpeg指令：--- 执行线程名：" + builder.toString());
-
-            // 取出输出流和错误流的信息
-            // 注意：必须要取出ffmpeg在执行命令过程中产生的输出信息，如果不取的话当输出流信息填满jvm存储输出留信息的缓冲区时，线程就回阻塞住
-            PrintStream errorStream = new PrintStream(ffmpeg.getErrorStream());
-            PrintStream inputStream = new PrintStream(ffmpeg.getInputStream());
-            errorStream.start();
-            inputStream.start();
-            // 等待ffmpeg命令执行完
-            ffmpeg.waitFor();
-
-            // 获取执行结果字符串
-            String result = errorStream.stringBuffer.append(inputStream.stringBuffer).toString();
-
+        String cmdStr = Arrays.toString(ffmpegCmds.toArray()).replace(",", "");
+        CompletableFuture<String> future = longRunning
+                ? getScheduler().submitLongRunning(ffmpegCmds, progress)
+                : getScheduler().submit(ffmpegCmds, priority, timeoutMillis, TimeUnit.MILLISECONDS, progress);
+        if (progress != null) {
+            // ffmpeg 卡住时不再输出进度，由看门狗补发进度、按需结束进程
+            progress.watch(future);
+        }
+        future.whenComplete((result, e) -> {
             // 输出执行的命令信息
-            String cmdStr = Arrays.toString(ffmpegCmds.toArray()).replace(",", "");
-            String resultStr = StringUtils.isBlank(result) ? "【异常】" : "正常";
+            String resultStr = e != null || StringUtils.isBlank(result) ? "【异常】" : "正常";
             log.info("--- 已执行的FFmepg命令： ---" + cmdStr + " 已执行完毕,执行结果： " + resultStr);
-            return result;
-
-        } catch (Exception e) {
-            log.error("--- FFmpeg命令执行出错！ --- 出错信息： " + e.getMessage());
-            return null;
-
-        } finally {
-            if (null != ffmpeg) {
-                ProcessKiller ffmpegKiller = new ProcessKiller(ffmpeg);
-                // JVM退出时，先通过钩子关闭FFmepg进程
-                runtime.addShutdownHook(ffmpegKiller);
-            }
-        }
+        });
+        // 返回调度器的 future 本身，whenComplete 返回的新 future 被 cancel 时不会结束进程
+        return future;
     }
 
     /**
@@ -216,6 +373,25 @@ public class MediaUtils {
      * @param height 视频高度；为空则保持源视频高度
      */
     public static void convertVideo(File fileInput, File fileOutPut, boolean withAudio, Integer crf, String preset, Integer width, Integer height) {
+        convertVideo(fileInput, fileOutPut, withAudio, crf, preset, width, height, null);
+    }
+
+    /**
+     * 视频转换，转换过程中实时回调进度
+     *
+     * 进度中的总时长取源视频的时长，据此计算完成百分比和预计剩余时间
+     *
+     * @param fileInput 源视频路径
+     * @param fileOutPut 转换后的视频输出路径
+     * @param withAudio 是否保留音频；true-保留，false-不保留
+     * @param crf 指定视频的质量系数，取值参考：CrfValueEnum.code
+     * @param preset 指定视频的编码速率，取值参考：PresetVauleEnum.presetValue
+     * @param width 视频宽度；为空则保持源视频宽度
+     * @param height 视频高度；为空则保持源视频高度
+     * @param listener 进度监听器；为空时不输出进度
+     */
+    public static void convertVideo(File fileInput, File fileOutPut, boolean withAudio, Integer crf, String preset, Integer width, Integer height,
+                                    FFmpegProgressListener listener) {
         if (null == fileInput || !fileInput.exists()) {
             throw new RuntimeException("源视频文件不存在，请检查源视频路径");
         }
@@ -257,7 +433,12 @@ public class MediaUtils {
         commond.add("-y"); // 当已存在输出文件时，不提示是否覆盖
         commond.add(fileOutPut.getAbsolutePath());
 
-        executeCommand(commond);
+        ProgressParser progress = null;
+        if (null != listener) {
+            VideoMetaInfo info = getVideoMetaInfo(fileInput);
+            progress = new ProgressParser(listener, null == info ? null : info.getDuration(), stallTimeoutMillis);
+        }
+        executeCommand(commond, JobPriorityEnum.BATCH, transcodeTimeoutMillis, progress);
     }
 
     /**
@@ -276,6 +457,20 @@ public class MediaUtils {
      */
     public static void trmp2Httpflv(String input, String output, boolean withAudio, Integer crf,
                                     String preset, Integer width, Integer height,Integer posW,Integer posH,Integer posX, Integer posY){
+        trmp2Httpflv(input, output, withAudio, crf, preset, width, height, posW, posH, posX, posY, null);
+    }
+
+    /**
+     * trmp流转httpflv直播流，运行过程中实时回调进度
+     *
+     * 直播流没有总时长，进度中不含完成百分比和预计剩余时间，可以通过 stalled 判断推流是否已经中断
+     *
+     * @param listener 进度监听器；为空时不输出进度
+     * @see #trmp2Httpflv(String, String, boolean, Integer, String, Integer, Integer, Integer, Integer, Integer, Integer)
+     */
+    public static void trmp2Httpflv(String input, String output, boolean withAudio, Integer crf,
+                                    String preset, Integer width, Integer height,Integer posW,Integer posH,Integer posX, Integer posY,
+                                    FFmpegProgressListener listener){
         if (StringUtils.isBlank(input) || StringUtils.isBlank(output)){
             throw new RuntimeException("视频路径不完整，请检查源视频路径");
         }
@@ -323,7 +518,8 @@ public class MediaUtils {
         commond.add("-y"); // 当已存在输出文件时，不提示是否覆盖
         commond.add(output);
 
-        executeCommand(commond);
+        // 直播流持续运行，不占用调度器的并发名额，否则几路直播就会让截帧、探测等任务一直排队
+        await(executeLongRunningAsync(commond, null == listener ? null : new ProgressParser(listener, null, stallTimeoutMillis)));
     }
 
     /**
@@ -496,7 +692,7 @@ public class MediaUtils {
                 commond.add(path);
             }
 
-            executeCommand(commond);
+            executeCommand(commond, JobPriorityEnum.INTERACTIVE, FFmpegScheduler.DEFAULT_TIMEOUT_MILLIS);
         } catch (Exception e) {
             log.error("--- 视频帧抽取过程出错 --- 错误信息： " + e.getMessage());
         }
@@ -511,6 +707,21 @@ public class MediaUtils {
      * @param timeLength 需要抽取的时间段（单位:s，需小于源视频最大时长）；例如：该参数值为10时即抽取从startTime开始之后10秒内的视频作为新视频
      */
     public static void cutVideo(File videoFile, File outputFile, Time startTime, int timeLength) {
+        cutVideo(videoFile, outputFile, startTime, timeLength, null);
+    }
+
+    /**
+     * 截取视频中的某一段，生成新视频，截取过程中实时回调进度
+     *
+     * 进度中的总时长为截取的时长
+     *
+     * @param videoFile 源视频路径
+     * @param outputFile 转换后的视频路径
+     * @param startTime 开始抽取的时间点（单位:s）
+     * @param timeLength 需要抽取的时间段（单位:s，需小于源视频最大时长）
+     * @param listener 进度监听器；为空时不输出进度
+     */
+    public static void cutVideo(File videoFile, File outputFile, Time startTime, int timeLength, FFmpegProgressListener listener) {
         if (videoFile == null || !videoFile.exists()) {
             throw new RuntimeException("视频文件不存在：");
         }
@@ -540,7 +751,8 @@ public class MediaUtils {
             commond.add("-acodec");
             commond.add("copy");
             commond.add(outputFile.getAbsolutePath());
-            executeCommand(commond);
+            ProgressParser progress = null == listener ? null : new ProgressParser(listener, timeLength * 1000L, stallTimeoutMillis);
+            executeCommand(commond, JobPriorityEnum.BATCH, transcodeTimeoutMillis, progress);
         } catch (IOException e) {
             log.error("--- 视频截取过程出错 ---");
         }
@@ -576,7 +788,7 @@ public class MediaUtils {
             commond.add("-acodec");
             commond.add("copy");
             commond.add(audioFile.getAbsolutePath());
-            executeCommand(commond);
+            executeCommand(commond, JobPriorityEnum.BATCH, transcodeTimeoutMillis);
         } catch (Exception e) {
             log.error("--- 抽取视频中的音频信息的过程出错 --- 错误信息： " + e.getMessage());
         }
@@ -858,10 +1070,20 @@ public class MediaUtils {
         if (inputFile == null || !inputFile.exists()) {
             throw new RuntimeException("源媒体文件不存在，源媒体文件路径： ");
         }
+        MetaInfoCache cache = metaInfoCache;
+        return cache == null ? probeMetaInfo(inputFile) : cache.get(inputFile, MediaUtils::probeMetaInfo);
+    }
+
+    /**
+     * 启动ffmpeg解析媒体信息，不经过缓存
+     * @param inputFile 源媒体文件
+     * @return
+     */
+    private static String probeMetaInfo(File inputFile) {
         List<String> commond = new ArrayList<>();
         commond.add("-i");
         commond.add(inputFile.getAbsolutePath());
-        String executeResult = executeCommand(commond);
+        String executeResult = executeCommand(commond, JobPriorityEnum.INTERACTIVE, FFmpegScheduler.DEFAULT_TIMEOUT_MILLIS);
         return executeResult;
     }
 
@@ -877,11 +1099,13 @@ public class MediaUtils {
 
         commend.add("-formats");
 
+        Process p = null;
         try {
             ProcessBuilder builder = new ProcessBuilder();
             builder.command(commend);
             builder.redirectErrorStream(true);
-            Process p= builder.start();
+            p = builder.start();
+            ProcessRegistry.register(p);
             // 保存ffmpeg的输出结果流
             BufferedReader buf;
             String line;
@@ -896,6 +1120,8 @@ public class MediaUtils {
             log.info("【系统支持的视频编码】" + sb.toString());
         } catch (Exception e) {
             log.error("获取失败 !");
+        } finally {
+            ProcessRegistry.deregister(p);
         }
     }
 
@@ -952,67 +1178,4 @@ public class MediaUtils {
         return format;
     }
 
-
-    /**
-     * 在程序退出前结束已有的FFmpeg进程
-     */
-    private static class ProcessKiller extends Thread {
-        private Process process;
-
-        public ProcessKiller(Process process) {
-            this.process = process;
-        }
-
-        @Override
-        public void run() {
-            this.process.destroy();
-            log.info("--- 已销毁FFmpeg进程 --- 进程名： " + process.toString());
-        }
-    }
-
-    /**
-     * 用于取出ffmpeg线程执行过程中产生的各种输出和错误流的信息
-     */
-    static class PrintStream extends Thread {
-        InputStream inputStream;
-        BufferedReader bufferedReader = null;
-        StringBuffer stringBuffer = new StringBuffer();
-
-        public PrintStream(InputStream inputStream) {
-            this.inputStream = inputStream;
-        }
-
-        @Override
-        public void run() {
-            try {
-                if (null == inputStream) {
-                    log.error("--- 读取输出流出错！因为当前输出流为空！---");
-                }
-                bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
-                String line = null;
-                while ((line = bufferedReader.readLine()) != null) {
-                    log.info(line);
-                    stringBuffer.append(line);
-                }
-            } catch (Exception e) {
-                log.error("--- 读取输入流出错了！--- 错误信息：" + e.getMessage());
-            } finally {
-                try {
-                    if (null != bufferedReader) {
-                        bufferedReader.close();
-                    }
-                    if (null != inputStream) {
-                        inputStream.close();
-                    }
-                } catch (IOException e) {
-                    log.error("--- 调用PrintStream读取输出流后，关闭流时出错！---");
-                }
-            }
-        }
-    }
-
-
 }
-
-
-
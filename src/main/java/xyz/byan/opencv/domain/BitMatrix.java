@@ -0,0 +1,125 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 18:20.
+ * @description: 按位压缩的二值图像，每个像素占1位，1表示黑色(像素值为0)，0表示非黑色
+ * 每行单独按 long 对齐存储，行与行之间不共享 long，不同的行可以在多个线程中同时写入
+ */
+@Getter
+public class BitMatrix {
+
+    /**
+     * 行数
+     */
+    private final int rows;
+    /**
+     * 列数
+     */
+    private final int cols;
+    /**
+     * 每行占用的 long 个数
+     */
+    private final int wordsPerRow;
+    /**
+     * 按行存储的位数据，第col列在 words[row * wordsPerRow + (col >>> 6)] 的第 (col & 63) 位
+     */
+    private final long[] words;
+
+    public BitMatrix(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerRow = (cols + 63) >>> 6;
+        this.words = new long[rows * wordsPerRow];
+    }
+
+    /**
+     * 把图像第一个通道中像素值为0的点压缩成位
+     * @param buffer 图像的像素缓冲区
+     * @return
+     */
+    public static BitMatrix of(PixelBuffer buffer) {
+        BitMatrix matrix = new BitMatrix(buffer.getRows(), buffer.getCols());
+        int channels = buffer.getChannels();
+        for (int row = 0; row < matrix.rows; row++) {
+            int from = buffer.index(row, 0);
+            int offset = row * matrix.wordsPerRow;
+            for (int col = 0; col < matrix.cols; col++) {
+                if (buffer.getInt(from + col * channels) == 0) {
+                    matrix.words[offset + (col >>> 6)] |= 1L << col;
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * 获取(row, col)点的位
+     * @return 1：黑色，0：非黑色
+     */
+    public int get(int row, int col) {
+        return (int) (words[row * wordsPerRow + (col >>> 6)] >>> col) & 1;
+    }
+
+    /**
+     * 设置(row, col)点的位
+     */
+    public void set(int row, int col, boolean black) {
+        int i = row * wordsPerRow + (col >>> 6);
+        if (black) {
+            words[i] |= 1L << col;
+        } else {
+            words[i] &= ~(1L << col);
+        }
+    }
+
+    /**
+     * 黑色点的个数
+     * @return
+     */
+    public long count() {
+        long count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * 复制
+     * @return
+     */
+    public BitMatrix copy() {
+        BitMatrix matrix = new BitMatrix(rows, cols);
+        System.arraycopy(words, 0, matrix.words, 0, words.length);
+        return matrix;
+    }
+
+    /**
+     * 把 mask 中为1的点写回图像第一个通道：黑色写0，非黑色写255；mask 中为0的点保持原值
+     * @param buffer 图像的像素缓冲区
+     * @param mask 需要写回的点，为空时全部写回
+     * @return buffer
+     */
+    public PixelBuffer writeTo(PixelBuffer buffer, BitMatrix mask) {
+        int channels = buffer.getChannels();
+        for (int row = 0; row < rows; row++) {
+            int from = buffer.index(row, 0);
+            int offset = row * wordsPerRow;
+            for (int w = 0; w < wordsPerRow; w++) {
+                long m = mask == null ? -1L : mask.words[offset + w];
+                while (m != 0) {
+                    int col = (w << 6) + Long.numberOfTrailingZeros(m);
+                    m &= m - 1;
+                    if (col >= cols) {
+                        break;
+                    }
+                    buffer.setAt(from + col * channels, (words[offset + w] >>> col & 1) != 0 ? 0 : 255);
+                }
+            }
+        }
+        return buffer;
+    }
+}
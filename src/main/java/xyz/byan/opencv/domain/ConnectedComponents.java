@@ -0,0 +1,281 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 18:55.
+ * @description: 连通域标记结果
+ * 通过并查集两遍扫描(two-pass)得到，每个连通域的统计信息按数组存储，下标为连通域序号
+ * 连通域按种子点(按列优先扫描时遇到的第一个点)的顺序编号，与按列扫描逐个 floodFill 的顺序一致
+ */
+@Getter
+public class ConnectedComponents {
+
+    /**
+     * 行数
+     */
+    private final int rows;
+    /**
+     * 列数
+     */
+    private final int cols;
+    /**
+     * 连通域个数
+     */
+    private int count;
+    /**
+     * 每个像素所属连通域的序号加1，0表示背景，按行存储
+     */
+    private final int[] labels;
+    /**
+     * 面积(像素个数)
+     */
+    private int[] area;
+    /**
+     * 外接矩形左上角的列
+     */
+    private int[] left;
+    /**
+     * 外接矩形左上角的行
+     */
+    private int[] top;
+    /**
+     * 外接矩形右下角的列(包含)
+     */
+    private int[] right;
+    /**
+     * 外接矩形右下角的行(包含)
+     */
+    private int[] bottom;
+    /**
+     * 质心的列坐标
+     */
+    private double[] centroidX;
+    /**
+     * 质心的行坐标
+     */
+    private double[] centroidY;
+    /**
+     * 种子点按列优先的序号：col * rows + row
+     */
+    private int[] seed;
+
+    private ConnectedComponents(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.labels = new int[rows * cols];
+    }
+
+    /**
+     * 标记图像第一个通道中像素值等于 value 的连通域(4邻域)，与 Imgproc.floodFill 的默认连通方式一致
+     * @param buffer 图像的像素缓冲区
+     * @param value 前景的像素值
+     * @return
+     */
+    public static ConnectedComponents of(PixelBuffer buffer, int value) {
+        return of(buffer, value, 4);
+    }
+
+    /**
+     * 标记图像第一个通道中像素值等于 value 的连通域
+     * @param buffer 图像的像素缓冲区
+     * @param value 前景的像素值
+     * @param connectivity 4 或 8
+     * @return
+     */
+    public static ConnectedComponents of(PixelBuffer buffer, int value, int connectivity) {
+        if (connectivity != 4 && connectivity != 8) {
+            throw new RuntimeException("连通方式只能是4或8：" + connectivity);
+        }
+        int rows = buffer.getRows(), cols = buffer.getCols(), channels = buffer.getChannels();
+        ConnectedComponents cc = new ConnectedComponents(rows, cols);
+        int[] labels = cc.labels;
+        // 第一遍：分配临时标号，相邻的标号在并查集中合并
+        int[] parent = new int[64];
+        int next = 1;
+        for (int i = 0; i < rows; i++) {
+            int from = buffer.index(i, 0);
+            for (int j = 0; j < cols; j++) {
+                if (buffer.getInt(from + j * channels) != value) {
+                    continue;
+                }
+                int p = i * cols + j;
+                int label = 0;
+                if (j > 0 && labels[p - 1] != 0) {
+                    label = labels[p - 1];
+                }
+                if (i > 0) {
+                    label = join(parent, label, labels[p - cols]);
+                    if (connectivity == 8) {
+                        if (j > 0) {
+                            label = join(parent, label, labels[p - cols - 1]);
+                        }
+                        if (j < cols - 1) {
+                            label = join(parent, label, labels[p - cols + 1]);
+                        }
+                    }
+                }
+                if (label == 0) {
+                    if (next == parent.length) {
+                        parent = Arrays.copyOf(parent, next << 1);
+                    }
+                    parent[next] = next;
+                    label = next++;
+                }
+                labels[p] = label;
+            }
+        }
+        // 根节点压缩成连续的序号，并记录每个连通域的种子点
+        int[] compact = new int[next];
+        int count = 0;
+        for (int l = 1; l < next; l++) {
+            int root = find(parent, l);
+            if (root == l) {
+                compact[l] = ++count;
+            }
+        }
+        int[] seed = new int[count + 1];
+        Arrays.fill(seed, Integer.MAX_VALUE);
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] != 0) {
+                int c = compact[find(parent, labels[p])];
+                labels[p] = c;
+                int key = (p % cols) * rows + p / cols;
+                if (key < seed[c]) {
+                    seed[c] = key;
+                }
+            }
+        }
+        // 按种子点排序后重新编号
+        Integer[] order = new Integer[count];
+        for (int c = 0; c < count; c++) {
+            order[c] = c + 1;
+        }
+        int[] seedKey = seed;
+        Arrays.sort(order, (a, b) -> Integer.compare(seedKey[a], seedKey[b]));
+        int[] remap = new int[count + 1];
+        for (int k = 0; k < count; k++) {
+            remap[order[k]] = k + 1;
+        }
+        cc.allocate(count);
+        for (int k = 0; k < count; k++) {
+            cc.seed[k] = seed[order[k]];
+        }
+        long[] sumX = new long[count], sumY = new long[count];
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] == 0) {
+                continue;
+            }
+            int k = remap[labels[p]] - 1;
+            labels[p] = k + 1;
+            int row = p / cols, col = p - row * cols;
+            cc.area[k]++;
+            sumX[k] += col;
+            sumY[k] += row;
+            cc.left[k] = Math.min(cc.left[k], col);
+            cc.right[k] = Math.max(cc.right[k], col);
+            cc.top[k] = Math.min(cc.top[k], row);
+            cc.bottom[k] = Math.max(cc.bottom[k], row);
+        }
+        for (int k = 0; k < count; k++) {
+            cc.centroidX[k] = (double) sumX[k] / cc.area[k];
+            cc.centroidY[k] = (double) sumY[k] / cc.area[k];
+        }
+        return cc;
+    }
+
+    private void allocate(int count) {
+        this.count = count;
+        this.area = new int[count];
+        this.left = new int[count];
+        this.top = new int[count];
+        this.right = new int[count];
+        this.bottom = new int[count];
+        this.centroidX = new double[count];
+        this.centroidY = new double[count];
+        this.seed = new int[count];
+        Arrays.fill(left, Integer.MAX_VALUE);
+        Arrays.fill(top, Integer.MAX_VALUE);
+        Arrays.fill(right, -1);
+        Arrays.fill(bottom, -1);
+    }
+
+    /**
+     * 合并两个临时标号，返回合并后的根；为0表示没有标号
+     */
+    private static int join(int[] parent, int a, int b) {
+        if (b == 0) {
+            return a;
+        }
+        if (a == 0) {
+            return b;
+        }
+        int ra = find(parent, a), rb = find(parent, b);
+        if (ra == rb) {
+            return ra;
+        }
+        // 根统一取较小的标号
+        if (ra < rb) {
+            parent[rb] = ra;
+            return ra;
+        }
+        parent[ra] = rb;
+        return rb;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * 获取(row, col)点所属连通域的序号
+     * @return 序号，背景为-1
+     */
+    public int label(int row, int col) {
+        return labels[row * cols + col] - 1;
+    }
+
+    /**
+     * 第k个连通域的外接矩形
+     */
+    public Rect getBoundingRect(int k) {
+        return new Rect(left[k], top[k], right[k] - left[k] + 1, bottom[k] - top[k] + 1);
+    }
+
+    /**
+     * 第k个连通域的质心
+     */
+    public Point getCentroid(int k) {
+        return new Point(centroidX[k], centroidY[k]);
+    }
+
+    /**
+     * 第k个连通域的种子点(x为列，y为行)
+     */
+    public Point getSeedPoint(int k) {
+        return new Point(seed[k] / rows, seed[k] % rows);
+    }
+
+    /**
+     * 面积最大的连通域，面积相同时取种子点靠前的
+     * @return 序号，没有连通域时为-1
+     */
+    public int largest() {
+        int max = -1;
+        for (int k = 0; k < count; k++) {
+            if (max == -1 || area[k] > area[max]) {
+                max = k;
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,188 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 19:30.
+ * @description: 轮廓描述信息
+ * 每个轮廓的面积、外接矩形、最小外接矩形、周长只计算一次，按数组存储，下标与 contours 中的下标一致
+ * 轮廓的排序键为最小外接矩形的外接矩形面积，与 ContoursUtils.findContours 的排序方式一致
+ */
+@Getter
+public class ContourDescriptors {
+
+    /**
+     * 轮廓
+     */
+    private final List<MatOfPoint> contours;
+    /**
+     * 轮廓个数
+     */
+    private final int count;
+    /**
+     * 轮廓面积
+     */
+    private final double[] area;
+    /**
+     * 外接矩形
+     */
+    private final int[] x;
+    private final int[] y;
+    private final int[] width;
+    private final int[] height;
+    /**
+     * 最小外接矩形
+     */
+    private final RotatedRect[] minAreaRect;
+    /**
+     * 周长(闭合曲线)
+     */
+    private final double[] perimeter;
+    /**
+     * 排序键：最小外接矩形的外接矩形面积
+     */
+    private final double[] rankKey;
+
+    private ContourDescriptors(List<MatOfPoint> contours) {
+        this.contours = contours;
+        this.count = contours.size();
+        this.area = new double[count];
+        this.x = new int[count];
+        this.y = new int[count];
+        this.width = new int[count];
+        this.height = new int[count];
+        this.minAreaRect = new RotatedRect[count];
+        this.perimeter = new double[count];
+        this.rankKey = new double[count];
+    }
+
+    /**
+     * 计算所有轮廓的描述信息，每个轮廓只转换一次浮点坐标，转换用的 MatOfPoint2f 在所有轮廓之间复用
+     * @param contours
+     * @return
+     */
+    public static ContourDescriptors of(List<MatOfPoint> contours) {
+        ContourDescriptors d = new ContourDescriptors(contours);
+        MatOfPoint2f points = new MatOfPoint2f();
+        for (int i = 0; i < d.count; i++) {
+            MatOfPoint contour = contours.get(i);
+            contour.convertTo(points, CvType.CV_32F);
+            d.area[i] = Imgproc.contourArea(contour);
+            Rect rect = Imgproc.boundingRect(contour);
+            d.x[i] = rect.x;
+            d.y[i] = rect.y;
+            d.width[i] = rect.width;
+            d.height[i] = rect.height;
+            d.minAreaRect[i] = Imgproc.minAreaRect(points);
+            d.perimeter[i] = Imgproc.arcLength(points, true);
+            d.rankKey[i] = d.minAreaRect[i].boundingRect().area();
+        }
+        points.release();
+        return d;
+    }
+
+    /**
+     * 第i个轮廓的外接矩形
+     */
+    public Rect getBoundingRect(int i) {
+        return new Rect(x[i], y[i], width[i], height[i]);
+    }
+
+    /**
+     * 比较两个轮廓：先比较排序键，相同时下标小的在前(与稳定排序一致)
+     */
+    private int compare(int a, int b) {
+        int c = Double.compare(rankKey[a], rankKey[b]);
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    /**
+     * 按排序键递增排序后的下标
+     * @return
+     */
+    public int[] sortedIndices() {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, this::compare);
+        int[] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = order[i];
+        }
+        return ret;
+    }
+
+    /**
+     * 按排序键递增排序后的轮廓
+     * @return
+     */
+    public List<MatOfPoint> sorted() {
+        return select(sortedIndices());
+    }
+
+    /**
+     * 排序键最大的轮廓下标，相同时取下标大的(即递增排序后的最后一个)，O(n)
+     * @return 没有轮廓时为-1
+     */
+    public int max() {
+        int max = -1;
+        for (int i = 0; i < count; i++) {
+            if (max == -1 || compare(i, max) > 0) {
+                max = i;
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 排序键最大的k个轮廓下标，按递减顺序，通过大小为k的最小堆选出，O(n log k)
+     * @param k
+     * @return
+     */
+    public int[] topK(int k) {
+        k = Math.min(k, count);
+        if (k <= 0) {
+            return new int[0];
+        }
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, this::compare);
+        for (int i = 0; i < count; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (compare(i, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] ret = new int[k];
+        for (int i = k - 1; i >= 0; i--) {
+            ret[i] = heap.poll();
+        }
+        return ret;
+    }
+
+    /**
+     * 按下标取出轮廓
+     * @param indices
+     * @return
+     */
+    public List<MatOfPoint> select(int[] indices) {
+        List<MatOfPoint> ret = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            ret.add(contours.get(i));
+        }
+        return ret;
+    }
+}
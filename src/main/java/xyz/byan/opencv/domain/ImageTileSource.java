@@ -0,0 +1,144 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 21:55.
+ * @description: 通过 ImageIO 按区域解码图像文件的数据源
+ * 每次只解码请求的区域(ImageReadParam.setSourceRegion)，内存占用与区域大小成正比；
+ * 单通道图像读为 CV_8UC1，其余读为 CV_8UC3(BGR)。同一个实例不能在多个线程中同时读取。
+ * 注意 JPEG、PNG 不能从中间开始解码，ImageIO 每次都从图像开头解码到区域末尾；
+ * 8位非隔行的灰度、RGB、调色板 PNG 按整行从上到下顺序读取时(TileUtils 的条带模式)，由 PngRowDecoder 接着上次的位置继续解码，
+ * 整幅图像只解码一遍。超大的 JPEG 建议先转换为这类 PNG 或 RawFrame 再分块处理
+ */
+@Getter
+public class ImageTileSource implements TileSource, Closeable {
+
+    private final File file;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int rows;
+    private final int cols;
+    private final int type;
+    /**
+     * 按行顺序解码的 PNG 解码器，不支持时为空
+     */
+    private PngRowDecoder sequential;
+
+    public ImageTileSource(File file) throws IOException {
+        this.file = file;
+        this.input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("无法读取图像文件：" + file);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("不支持的图像格式：" + file);
+        }
+        this.reader = readers.next();
+        reader.setInput(input, false, true);
+        this.cols = reader.getWidth(0);
+        this.rows = reader.getHeight(0);
+        ImageTypeSpecifier spec = reader.getImageTypes(0).next();
+        boolean gray = spec.getSampleModel().getNumBands() == 1 && !(spec.getColorModel() instanceof IndexColorModel);
+        this.type = gray ? CvType.CV_8UC1 : CvType.CV_8UC3;
+        if ("png".equalsIgnoreCase(reader.getFormatName())) {
+            PngRowDecoder decoder = PngRowDecoder.open(file);
+            if (decoder != null && decoder.channels() == CvType.channels(type)) {
+                this.sequential = decoder;
+            } else if (decoder != null) {
+                decoder.close();
+            }
+        }
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public int cols() {
+        return cols;
+    }
+
+    @Override
+    public int type() {
+        return type;
+    }
+
+    @Override
+    public synchronized Mat read(Rect region) {
+        if (sequential != null && region.x == 0 && region.width == cols && region.y == sequential.nextRow()) {
+            return readSequential(region);
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(region.x, region.y, region.width, region.height));
+        BufferedImage image;
+        try {
+            image = reader.read(0, param);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取图像区域失败：" + region, e);
+        }
+        int channels = CvType.channels(type);
+        int imageType = channels == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        int width = image.getWidth(), height = image.getHeight();
+        // 3BYTE_BGR 的数据按 B、G、R 顺序存储，与 Mat 一致；其他类型先画到对应类型的图像上
+        if (image.getType() != imageType || image.getRaster().getDataBuffer().getSize() != width * height * channels) {
+            BufferedImage converted = new BufferedImage(width, height, imageType);
+            Graphics2D g = converted.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = converted;
+        }
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        Mat mat = new Mat(height, width, type);
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    /**
+     * 从上次结束的行继续解码
+     */
+    private Mat readSequential(Rect region) {
+        byte[] data;
+        try {
+            data = sequential.read(region.height);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取图像区域失败：" + region, e);
+        }
+        Mat mat = new Mat(region.height, region.width, type);
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sequential != null) {
+            sequential.close();
+        }
+        reader.dispose();
+        input.close();
+    }
+}
@@ -0,0 +1,154 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 20:40.
+ * @description: 按尺寸、类型缓存 Mat 的对象池
+ * 处理同一尺寸的视频帧时，临时 Mat 用完放回池中，下一帧直接取出复用，不再反复申请、释放本地内存。
+ * 池中 Mat 占用的总字节数有上限，超过上限时按最近最少使用(LRU)的顺序淘汰整个尺寸分组并 release。
+ * 每个线程一个池(MatPool.get())，同一个池只应在一个线程中使用。
+ */
+@Getter
+public class MatPool {
+
+    /**
+     * 每个线程的池默认最多缓存 64MB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final ThreadLocal<MatPool> LOCAL = ThreadLocal.withInitial(() -> new MatPool(DEFAULT_MAX_BYTES));
+
+    /**
+     * 池中 Mat 占用字节数的上限
+     */
+    private final long maxBytes;
+    /**
+     * 池中 Mat 当前占用的字节数
+     */
+    private long pooledBytes;
+    /**
+     * 命中次数
+     */
+    private long hits;
+    /**
+     * 未命中(新建)次数
+     */
+    private long misses;
+    /**
+     * 淘汰的 Mat 个数
+     */
+    private long evictions;
+
+    /**
+     * 按尺寸、类型分组的空闲 Mat，按访问顺序排列，最久未使用的分组在最前面
+     */
+    private final Map<Long, ArrayDeque<Mat>> free = new LinkedHashMap<>(16, 0.75f, true);
+
+    public MatPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 当前线程的池
+     * @return
+     */
+    public static MatPool get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * 取出指定尺寸、类型的 Mat，池中没有时新建，内容不做初始化
+     * @param rows
+     * @param cols
+     * @param type
+     * @return
+     */
+    public synchronized Mat acquire(int rows, int cols, int type) {
+        ArrayDeque<Mat> mats = free.get(key(rows, cols, type));
+        if (mats != null && !mats.isEmpty()) {
+            Mat mat = mats.pop();
+            pooledBytes -= bytes(mat);
+            hits++;
+            return mat;
+        }
+        misses++;
+        return new Mat(rows, cols, type);
+    }
+
+    /**
+     * 取出指定尺寸、类型的 Mat
+     * @param size
+     * @param type
+     * @return
+     */
+    public Mat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    /**
+     * 把 Mat 放回池中；空的或非连续的 Mat(如 submat)直接 release
+     * @param mat
+     */
+    public synchronized void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        long bytes = bytes(mat);
+        if (bytes == 0 || bytes > maxBytes || !mat.isContinuous() || mat.isSubmatrix()) {
+            mat.release();
+            return;
+        }
+        free.computeIfAbsent(key(mat.rows(), mat.cols(), mat.type()), k -> new ArrayDeque<>()).push(mat);
+        pooledBytes += bytes;
+        evict();
+    }
+
+    /**
+     * 释放池中所有的 Mat
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Mat> mats : free.values()) {
+            for (Mat mat : mats) {
+                mat.release();
+            }
+        }
+        free.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * 超过上限时从最久未使用的分组开始淘汰
+     */
+    private void evict() {
+        Iterator<ArrayDeque<Mat>> it = free.values().iterator();
+        while (pooledBytes > maxBytes && it.hasNext()) {
+            ArrayDeque<Mat> mats = it.next();
+            while (pooledBytes > maxBytes && !mats.isEmpty()) {
+                Mat mat = mats.pollLast();
+                pooledBytes -= bytes(mat);
+                mat.release();
+                evictions++;
+            }
+            if (mats.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 38) | ((long) cols << 12) | type;
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.dataAddr() == 0 ? 0 : mat.total() * mat.elemSize();
+    }
+}
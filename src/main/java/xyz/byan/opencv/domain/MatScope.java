@@ -0,0 +1,276 @@
+package xyz.byan.opencv.domain;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 20:05.
+ * @description: Mat 临时对象的作用域
+ * 配合 try-with-resources 使用，作用域内创建或登记的 Mat 在 close 时统一 release，不再依赖 finalizer 回收本地内存；
+ * 作用域内提前归还(recycle)的 Mat 会被后续相同尺寸、类型的申请复用；指定 MatPool 时从池中申请，关闭时放回池中。
+ * 需要作为结果返回的 Mat 通过 keep 移出作用域。
+ *
+ * <pre>
+ * try (MatScope scope = new MatScope()) {
+ *     Mat gray = scope.mat();
+ *     Imgproc.cvtColor(src, gray, Imgproc.COLOR_BGR2GRAY);
+ *     ...
+ *     return scope.keep(ret);
+ * }
+ * </pre>
+ *
+ * 静态计数器统计创建、关闭的作用域个数，以及累计释放的字节数，可用于监控内存泄漏；
+ * 未关闭的作用域只以弱引用登记，忘记 close 的作用域不可达后仍可被回收，其中的 Mat 由 GC 释放，并计入 leakedScopes
+ */
+public class MatScope implements AutoCloseable {
+
+    /**
+     * 所有未关闭、仍可达的作用域，弱引用，不阻止未关闭的作用域被回收
+     */
+    private static final Set<MatScope> OPEN = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    /**
+     * 累计创建的作用域个数
+     */
+    private static final AtomicLong OPENED_SCOPES = new AtomicLong();
+    /**
+     * 累计关闭的作用域个数
+     */
+    private static final AtomicLong CLOSED_SCOPES = new AtomicLong();
+    /**
+     * 累计释放的 Mat 个数
+     */
+    private static final AtomicLong RELEASED_MATS = new AtomicLong();
+    /**
+     * 累计释放的字节数
+     */
+    private static final AtomicLong RELEASED_BYTES = new AtomicLong();
+    /**
+     * 作用域内复用的 Mat 个数
+     */
+    private static final AtomicLong RECYCLED_MATS = new AtomicLong();
+
+    /**
+     * 登记的 Mat，按引用判断是否相同
+     */
+    private final Map<Mat, Boolean> tracked = new IdentityHashMap<>();
+    /**
+     * 已归还、可以复用的 Mat
+     */
+    private final List<Mat> free = new ArrayList<>();
+
+    /**
+     * 申请和释放 Mat 使用的池，为空时直接新建和 release
+     */
+    private final MatPool pool;
+
+    private boolean closed;
+
+    public MatScope() {
+        this(null);
+    }
+
+    /**
+     * @param pool 申请的 Mat 从池中取出，关闭时放回池中，为空时直接新建和 release
+     */
+    public MatScope(MatPool pool) {
+        this.pool = pool;
+        OPENED_SCOPES.incrementAndGet();
+        OPEN.add(this);
+    }
+
+    /**
+     * 使用当前线程的 MatPool 的作用域，适合逐帧处理等反复申请相同尺寸 Mat 的场景
+     * @return
+     */
+    public static MatScope pooled() {
+        return new MatScope(MatPool.get());
+    }
+
+    /**
+     * 创建一个空的 Mat 并登记，通常作为 OpenCV 函数的输出参数
+     * @return
+     */
+    public Mat mat() {
+        return track(new Mat());
+    }
+
+    /**
+     * 申请指定尺寸、类型的 Mat，优先复用作用域内已归还的 Mat，内容不做初始化
+     * @param rows
+     * @param cols
+     * @param type
+     * @return
+     */
+    public synchronized Mat mat(int rows, int cols, int type) {
+        for (int i = free.size() - 1; i >= 0; i--) {
+            Mat mat = free.get(i);
+            if (mat.rows() == rows && mat.cols() == cols && mat.type() == type) {
+                free.remove(i);
+                RECYCLED_MATS.incrementAndGet();
+                return mat;
+            }
+        }
+        return track(allocate(rows, cols, type));
+    }
+
+    /**
+     * 申请指定尺寸、类型的 Mat
+     * @param size
+     * @param type
+     * @return
+     */
+    public Mat mat(Size size, int type) {
+        return mat((int) size.height, (int) size.width, type);
+    }
+
+    private Mat allocate(int rows, int cols, int type) {
+        return pool == null ? new Mat(rows, cols, type) : pool.acquire(rows, cols, type);
+    }
+
+    private void dispose(Mat mat) {
+        if (pool == null) {
+            mat.release();
+        } else {
+            pool.release(mat);
+        }
+    }
+
+    /**
+     * 登记一个 Mat，作用域关闭时释放
+     * @param mat
+     * @return mat
+     */
+    public synchronized <T extends Mat> T track(T mat) {
+        if (closed) {
+            throw new RuntimeException("作用域已关闭");
+        }
+        if (mat != null) {
+            tracked.put(mat, Boolean.TRUE);
+        }
+        return mat;
+    }
+
+    /**
+     * 把 Mat 移出作用域，关闭时不再释放，用于需要返回给调用方的结果
+     * @param mat
+     * @return mat
+     */
+    public synchronized <T extends Mat> T keep(T mat) {
+        tracked.remove(mat);
+        free.remove(mat);
+        return mat;
+    }
+
+    /**
+     * 提前归还一个已登记的 Mat，之后相同尺寸、类型的申请可以复用它
+     * @param mat
+     */
+    public synchronized void recycle(Mat mat) {
+        if (mat != null && tracked.containsKey(mat) && !free.contains(mat)) {
+            free.add(mat);
+        }
+    }
+
+    /**
+     * 当前作用域中登记的 Mat 占用的字节数
+     * @return
+     */
+    public synchronized long liveBytes() {
+        long bytes = 0;
+        for (Mat mat : tracked.keySet()) {
+            bytes += bytes(mat);
+        }
+        return bytes;
+    }
+
+    /**
+     * 释放所有登记的 Mat
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        CLOSED_SCOPES.incrementAndGet();
+        OPEN.remove(this);
+        for (Mat mat : tracked.keySet()) {
+            RELEASED_BYTES.addAndGet(bytes(mat));
+            RELEASED_MATS.incrementAndGet();
+            dispose(mat);
+        }
+        tracked.clear();
+        free.clear();
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.dataAddr() == 0 ? 0 : mat.total() * mat.elemSize();
+    }
+
+    /**
+     * 所有未关闭、仍可达的作用域中登记的 Mat 占用的字节数
+     * 只统计登记到作用域中的 Mat，不代表进程实际占用的本地内存
+     * @return
+     */
+    public static long totalLiveBytes() {
+        List<MatScope> scopes;
+        synchronized (OPEN) {
+            scopes = new ArrayList<>(OPEN);
+        }
+        long bytes = 0;
+        for (MatScope scope : scopes) {
+            bytes += scope.liveBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 未关闭、仍可达的作用域个数
+     * @return
+     */
+    public static int openScopes() {
+        return OPEN.size();
+    }
+
+    /**
+     * 没有关闭就被回收的作用域个数(近似值)，大于0说明有代码忘记调用 close
+     * @return
+     */
+    public static long leakedScopes() {
+        return Math.max(0, OPENED_SCOPES.get() - CLOSED_SCOPES.get() - OPEN.size());
+    }
+
+    /**
+     * 累计释放的 Mat 个数
+     * @return
+     */
+    public static long releasedMats() {
+        return RELEASED_MATS.get();
+    }
+
+    /**
+     * 累计释放的字节数
+     * @return
+     */
+    public static long releasedBytes() {
+        return RELEASED_BYTES.get();
+    }
+
+    /**
+     * 作用域内复用的 Mat 个数
+     * @return
+     */
+    public static long recycledMats() {
+        return RECYCLED_MATS.get();
+    }
+}
@@ -0,0 +1,410 @@
+package xyz.byan.opencv.domain;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.RotatedRect;
+import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.util.BinaryUtils;
+import xyz.byan.opencv.util.ContoursUtils;
+import xyz.byan.opencv.util.GeneralUtils;
+import xyz.byan.opencv.util.ImagesUtil;
+import xyz.byan.opencv.util.RemoveNoiseUtils;
+import xyz.byan.opencv.util.RotationUtils;
+import xyz.byan.opencv.util.ThresholdUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 21:10.
+ * @description: 图像处理流水线
+ * 先记录各个处理阶段，第一次执行时再编译：相邻的逐像素阶段(亮度、对比度、二值化)合并成一张查找表，只遍历一次像素；
+ * 中间结果在两块缓冲区之间交替写入，同一条流水线逐帧执行时复用这两块缓冲区，并记录每个阶段的耗时。
+ *
+ * <pre>
+ * Pipeline pipeline = new Pipeline().gray().binarize().denoise(1).deskew();
+ * Mat dst = new Mat();
+ * for (Mat frame : frames) {
+ *     pipeline.run(frame, dst);
+ * }
+ * </pre>
+ *
+ * 流水线持有中间缓冲区，同一个实例不能在多个线程中同时执行
+ */
+public class Pipeline {
+
+    /**
+     * 记录的阶段，逐像素阶段为 PointStep，其余为 Stage
+     */
+    private final List<Object> steps = new ArrayList<>();
+    /**
+     * 编译后的阶段
+     */
+    private List<Stage> compiled;
+    /**
+     * 交替写入的中间缓冲区
+     */
+    private final Mat[] buffers = {new Mat(), new Mat()};
+    /**
+     * 最近一次执行每个阶段的耗时(纳秒)
+     */
+    private final Map<String, Long> lastTimings = new LinkedHashMap<>();
+    /**
+     * 累计每个阶段的耗时(纳秒)
+     */
+    private final Map<String, Long> totalTimings = new LinkedHashMap<>();
+    /**
+     * 执行次数
+     */
+    private long runs;
+
+    /**
+     * 灰度化，与 GrayUtils.grayNative 一致：三通道图像转为灰度图，其他保持不变
+     * @return
+     */
+    public Pipeline gray() {
+        return stage(new Stage("gray", (src, dst) -> {
+            if (src.channels() != 3) {
+                return src;
+            }
+            Imgproc.cvtColor(src, dst, Imgproc.COLOR_BGR2GRAY);
+            return dst;
+        }));
+    }
+
+    /**
+     * 亮度调节，与 ImagesUtil.shiftBrightness 一致
+     * @param val 调节系数
+     * @return
+     */
+    public Pipeline brightness(int val) {
+        return point(new PointStep(PointStep.BRIGHTNESS, val));
+    }
+
+    /**
+     * 对比度调节，与 ImagesUtil.shiftContrast 一致
+     * @param val 调节系数
+     * @return
+     */
+    public Pipeline contrast(int val) {
+        return point(new PointStep(PointStep.CONTRAST, val));
+    }
+
+    /**
+     * 自适应阀值二值化，与 BinaryUtils.binaryzation(src, true) 一致：阀值由均值迭代法确定，结果保证白底黑字
+     * 阀值根据上一步结果的直方图计算，直方图由输入的直方图经前面的查找表映射得到，不需要额外遍历像素
+     * @return
+     */
+    public Pipeline binarize() {
+        return point(new PointStep(PointStep.BINARIZE, PointStep.AUTO));
+    }
+
+    /**
+     * 固定阀值二值化，与 BinaryUtils.binaryzation(src, threshold) 一致，结果保证白底黑字
+     * @param threshold 阀值
+     * @return
+     */
+    public Pipeline binarize(int threshold) {
+        return point(new PointStep(PointStep.BINARIZE, threshold));
+    }
+
+    /**
+     * 8邻域降噪，与 RemoveNoiseUtils.eghitRemoveNoise 一致
+     * @param pNum 阀值
+     * @param iterations 迭代次数
+     * @return
+     */
+    public Pipeline denoise(int pNum, int iterations) {
+        return stage("denoise", (src, dst) -> {
+            src.copyTo(dst);
+            return RemoveNoiseUtils.eghitRemoveNoise(dst, pNum, iterations);
+        });
+    }
+
+    /**
+     * 8邻域降噪
+     * @param pNum 阀值
+     * @return
+     */
+    public Pipeline denoise(int pNum) {
+        return denoise(pNum, 1);
+    }
+
+    /**
+     * canny边缘检测
+     * @return
+     */
+    public Pipeline canny() {
+        return stage("canny", GeneralUtils::cannyInto);
+    }
+
+    /**
+     * 纠偏：对当前图像做边缘检测，找到最大的矩形后按 RotationUtils.rotation 旋转当前图像
+     * 边缘图与整页一样大，只在本阶段内使用，用完立即释放，不放入线程的 MatPool 长期占用池的容量
+     * @return
+     */
+    public Pipeline deskew() {
+        return stage("deskew", (src, dst) -> {
+            Mat edges = new Mat();
+            try {
+                RotatedRect rect = ContoursUtils.findMaxRect(GeneralUtils.cannyInto(src, edges));
+                return RotationUtils.rotationInto(src, rect, dst);
+            } finally {
+                edges.release();
+            }
+        });
+    }
+
+    /**
+     * 自定义阶段
+     * @param name 阶段名称，用于记录耗时
+     * @param function 输入为上一步的结果(不能修改)和可写入的缓冲区，返回本阶段的结果(缓冲区或者原样返回输入)
+     * @return
+     */
+    public Pipeline stage(String name, BiFunction<Mat, Mat, Mat> function) {
+        return stage(new Stage(name, function));
+    }
+
+    private Pipeline stage(Stage stage) {
+        steps.add(stage);
+        compiled = null;
+        return this;
+    }
+
+    private Pipeline point(PointStep step) {
+        steps.add(step);
+        compiled = null;
+        return this;
+    }
+
+    /**
+     * 执行流水线，返回新的结果矩阵
+     * @param src 输入图像，不会被修改
+     * @return
+     */
+    public Mat run(Mat src) {
+        return run(src, new Mat());
+    }
+
+    /**
+     * 执行流水线，结果写入dst；逐帧执行时传入同一个dst，稳定后不再申请本地内存
+     * @param src 输入图像，不会被修改
+     * @param dst 结果矩阵，不能与src相同
+     * @return dst
+     */
+    public Mat run(Mat src, Mat dst) {
+        if (compiled == null) {
+            compiled = compile();
+        }
+        lastTimings.clear();
+        Mat current = src;
+        for (Stage stage : compiled) {
+            Mat out = current == buffers[0] ? buffers[1] : buffers[0];
+            long start = System.nanoTime();
+            current = stage.function.apply(current, out);
+            long nanos = System.nanoTime() - start;
+            lastTimings.merge(stage.name, nanos, Long::sum);
+            totalTimings.merge(stage.name, nanos, Long::sum);
+        }
+        runs++;
+        current.copyTo(dst);
+        return dst;
+    }
+
+    /**
+     * 最近一次执行每个阶段的耗时(纳秒)，按执行顺序排列，合并后的逐像素阶段以"+"连接名称
+     * @return
+     */
+    public Map<String, Long> lastTimings() {
+        return Collections.unmodifiableMap(lastTimings);
+    }
+
+    /**
+     * 累计每个阶段的耗时(纳秒)
+     * @return
+     */
+    public Map<String, Long> totalTimings() {
+        return Collections.unmodifiableMap(totalTimings);
+    }
+
+    /**
+     * 执行次数
+     * @return
+     */
+    public long runs() {
+        return runs;
+    }
+
+    /**
+     * 释放中间缓冲区
+     */
+    public void release() {
+        for (Mat buffer : buffers) {
+            buffer.release();
+        }
+    }
+
+    /**
+     * 编译：相邻的逐像素阶段合并成一个阶段
+     */
+    private List<Stage> compile() {
+        List<Stage> ret = new ArrayList<>();
+        List<PointStep> group = new ArrayList<>();
+        for (Object step : steps) {
+            if (step instanceof PointStep) {
+                group.add((PointStep) step);
+                continue;
+            }
+            if (!group.isEmpty()) {
+                ret.add(fuse(group));
+                group = new ArrayList<>();
+            }
+            ret.add((Stage) step);
+        }
+        if (!group.isEmpty()) {
+            ret.add(fuse(group));
+        }
+        return ret;
+    }
+
+    /**
+     * 把一组逐像素阶段合并成一张查找表，8位图像只遍历一次像素；其他深度逐个调用对应的工具方法
+     */
+    private static Stage fuse(List<PointStep> group) {
+        StringBuilder name = new StringBuilder();
+        boolean range = false, histogram = false;
+        for (PointStep step : group) {
+            name.append(name.length() == 0 ? "" : "+").append(step.name());
+            range |= step.kind == PointStep.CONTRAST;
+            histogram |= step.kind == PointStep.BINARIZE;
+        }
+        boolean needRange = range, needHistogram = histogram;
+        return new Stage(name.toString(), (src, dst) -> {
+            if (CvType.depth(src.type()) != CvType.CV_8U) {
+                Mat current = src;
+                for (PointStep step : group) {
+                    Mat next = step.apply(current);
+                    // 释放上一步的中间结果，调节系数为基准值时工具方法原样返回输入
+                    if (current != src && current != next) {
+                        current.release();
+                    }
+                    current = next;
+                }
+                current.copyTo(dst);
+                if (current != src) {
+                    current.release();
+                }
+                return dst;
+            }
+            ToneCurve curve = needRange ? ToneCurve.of(src) : ToneCurve.identity(src.channels());
+            int[] input = needHistogram ? ThresholdUtils.histogram(PixelBuffer.of(src)) : null;
+            for (PointStep step : group) {
+                step.append(curve, input);
+            }
+            return curve.apply(src, dst);
+        });
+    }
+
+    /**
+     * 非逐像素的阶段
+     */
+    private static class Stage {
+        private final String name;
+        private final BiFunction<Mat, Mat, Mat> function;
+
+        Stage(String name, BiFunction<Mat, Mat, Mat> function) {
+            this.name = name;
+            this.function = function;
+        }
+    }
+
+    /**
+     * 逐像素阶段
+     */
+    private static class PointStep {
+        static final int BRIGHTNESS = 0;
+        static final int CONTRAST = 1;
+        static final int BINARIZE = 2;
+        /**
+         * 二值化阀值自适应确定
+         */
+        static final int AUTO = Integer.MIN_VALUE;
+
+        private final int kind;
+        private final int value;
+
+        PointStep(int kind, int value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        String name() {
+            return kind == BRIGHTNESS ? "brightness" : (kind == CONTRAST ? "contrast" : "binarize");
+        }
+
+        /**
+         * 把本阶段追加到曲线上
+         * @param curve 前面各阶段合并后的曲线
+         * @param input 输入图像第一个通道的直方图
+         */
+        void append(ToneCurve curve, int[] input) {
+            if (kind == BRIGHTNESS) {
+                curve.brightness(value);
+                return;
+            }
+            if (kind == CONTRAST) {
+                curve.contrast(value);
+                return;
+            }
+            if (curve.getChannels() != 1) {
+                throw new RuntimeException("不是单通道图，需要先灰度化！！！");
+            }
+            // 当前结果的直方图 = 输入直方图经前面的查找表映射
+            int[] table = curve.getTable()[0];
+            int[] hist = new int[ThresholdUtils.LEVELS];
+            for (int v = 0; v < ThresholdUtils.LEVELS; v++) {
+                hist[table[v]] += input[v];
+            }
+            int threshold = value == AUTO ? ThresholdUtils.iterative(hist) : value;
+            if (threshold < 0) {
+                // 与 BinaryUtils.binaryzation 一致，阀值异常时保持不变
+                return;
+            }
+            int black = 0, white = 0;
+            for (int v = 0; v < ThresholdUtils.LEVELS; v++) {
+                if (v > threshold) {
+                    white += hist[v];
+                } else {
+                    black += hist[v];
+                }
+            }
+            // 黑色多于白色时反转，保证白底黑字
+            boolean turn = black > white;
+            int[] lut = new int[ThresholdUtils.LEVELS];
+            for (int v = 0; v < ThresholdUtils.LEVELS; v++) {
+                boolean isWhite = v > threshold;
+                lut[v] = isWhite != turn ? GeneralUtils.getWHITE() : GeneralUtils.getBLACK();
+            }
+            curve.channel(0, lut);
+        }
+
+        /**
+         * 逐个调用工具方法，用于非8位图像
+         */
+        Mat apply(Mat src) {
+            if (kind == BRIGHTNESS) {
+                return ImagesUtil.shiftBrightness(src, value);
+            }
+            if (kind == CONTRAST) {
+                return ImagesUtil.shiftContrast(src, value);
+            }
+            Mat copy = src.clone();
+            return value == AUTO ? BinaryUtils.binaryzation(copy, true) : BinaryUtils.binaryzation(copy, value);
+        }
+    }
+}
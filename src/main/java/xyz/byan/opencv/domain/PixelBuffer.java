@@ -0,0 +1,456 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 10:12.
+ * @description: Mat像素的批量访问缓冲区
+ * 通过一次 Mat.get(0, 0, buf) 把整张图像拷贝到 byte[]/short[]/int[]/float[]/double[] 中，处理完成后再通过一次 put 写回，
+ * 避免逐像素调用 Mat.get/put 产生的 JNI 开销。同一个缓冲区可以重复 read 不同的 Mat，容量足够时不会重新分配数组。
+ * 支持的深度：CV_8U、CV_8S、CV_16U、CV_16S、CV_32S、CV_32F、CV_64F
+ */
+@Getter
+public class PixelBuffer {
+
+    /**
+     * 行数(图像高度)
+     */
+    private int rows;
+    /**
+     * 列数(图像宽度)
+     */
+    private int cols;
+    /**
+     * 通道数
+     */
+    private int channels;
+    /**
+     * 深度，取值参考：CvType.CV_8U 等
+     */
+    private int depth;
+
+    private byte[] bytes;
+    private short[] shorts;
+    private int[] ints;
+    private float[] floats;
+    private double[] doubles;
+
+    public PixelBuffer() {
+    }
+
+    public PixelBuffer(Mat src) {
+        read(src);
+    }
+
+    /**
+     * 创建一个指定大小和类型的空缓冲区
+     * @param rows 行数
+     * @param cols 列数
+     * @param type Mat类型，例如 CvType.CV_8UC1
+     */
+    public PixelBuffer(int rows, int cols, int type) {
+        allocate(rows, cols, type);
+    }
+
+    /**
+     * 根据Mat创建缓冲区，并拷贝其全部像素
+     * @param src
+     * @return
+     */
+    public static PixelBuffer of(Mat src) {
+        return new PixelBuffer(src);
+    }
+
+    /**
+     * 把Mat的全部像素一次性读入缓冲区
+     * @param src
+     * @return 当前缓冲区
+     */
+    public PixelBuffer read(Mat src) {
+        if (src == null) {
+            throw new RuntimeException("不能传入空对象");
+        }
+        allocate(src.rows(), src.cols(), src.type());
+        if (length() == 0) {
+            return this;
+        }
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                src.get(0, 0, bytes);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                src.get(0, 0, shorts);
+                break;
+            case CvType.CV_32S:
+                src.get(0, 0, ints);
+                break;
+            case CvType.CV_32F:
+                src.get(0, 0, floats);
+                break;
+            default:
+                src.get(0, 0, doubles);
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * 只把Mat中rect区域的像素重新读入缓冲区的对应位置，缓冲区和Mat的大小、类型必须一致
+     * 适用于 Imgproc.floodFill 等只修改了局部区域的原生调用之后同步缓冲区
+     * @param src
+     * @param rect 需要同步的区域
+     * @return 当前缓冲区
+     */
+    public PixelBuffer readRegion(Mat src, Rect rect) {
+        if (src.rows() != rows || src.cols() != cols || src.type() != getType()) {
+            throw new RuntimeException("缓冲区与Mat的大小或类型不一致");
+        }
+        if (rect.width <= 0 || rect.height <= 0) {
+            return this;
+        }
+        Mat sub = src.submat(rect);
+        int stride = rect.width * channels;
+        int length = stride * rect.height;
+        int offset = index(rect.y, rect.x);
+        int rowStride = rowStride();
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                byte[] b = new byte[length];
+                sub.get(0, 0, b);
+                for (int r = 0; r < rect.height; r++) {
+                    System.arraycopy(b, r * stride, bytes, offset + r * rowStride, stride);
+                }
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                short[] s = new short[length];
+                sub.get(0, 0, s);
+                for (int r = 0; r < rect.height; r++) {
+                    System.arraycopy(s, r * stride, shorts, offset + r * rowStride, stride);
+                }
+                break;
+            case CvType.CV_32S:
+                int[] n = new int[length];
+                sub.get(0, 0, n);
+                for (int r = 0; r < rect.height; r++) {
+                    System.arraycopy(n, r * stride, ints, offset + r * rowStride, stride);
+                }
+                break;
+            case CvType.CV_32F:
+                float[] f = new float[length];
+                sub.get(0, 0, f);
+                for (int r = 0; r < rect.height; r++) {
+                    System.arraycopy(f, r * stride, floats, offset + r * rowStride, stride);
+                }
+                break;
+            default:
+                double[] d = new double[length];
+                sub.get(0, 0, d);
+                for (int r = 0; r < rect.height; r++) {
+                    System.arraycopy(d, r * stride, doubles, offset + r * rowStride, stride);
+                }
+                break;
+        }
+        sub.release();
+        return this;
+    }
+
+    /**
+     * 把缓冲区的全部像素一次性写回Mat，Mat的大小或类型不一致时会重新创建
+     * @param dst
+     * @return 写入后的Mat
+     */
+    public Mat write(Mat dst) {
+        if (dst == null) {
+            throw new RuntimeException("不能传入空对象");
+        }
+        if (dst.rows() != rows || dst.cols() != cols || dst.type() != getType()) {
+            dst.create(rows, cols, getType());
+        }
+        if (length() == 0) {
+            return dst;
+        }
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                dst.put(0, 0, bytes);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                dst.put(0, 0, shorts);
+                break;
+            case CvType.CV_32S:
+                dst.put(0, 0, ints);
+                break;
+            case CvType.CV_32F:
+                dst.put(0, 0, floats);
+                break;
+            default:
+                dst.put(0, 0, doubles);
+                break;
+        }
+        return dst;
+    }
+
+    /**
+     * 把缓冲区写入一个新建的Mat
+     * @return
+     */
+    public Mat toMat() {
+        return write(new Mat(rows, cols, getType()));
+    }
+
+    /**
+     * 按指定大小和类型准备数组，已有数组容量足够时直接复用
+     * @param rows
+     * @param cols
+     * @param type
+     * @return 当前缓冲区
+     */
+    public PixelBuffer allocate(int rows, int cols, int type) {
+        int depth = CvType.depth(type);
+        int channels = CvType.channels(type);
+        int length = rows * cols * channels;
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                if (bytes == null || bytes.length < length || bytes.length % channels != 0) {
+                    bytes = new byte[length];
+                }
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                if (shorts == null || shorts.length < length || shorts.length % channels != 0) {
+                    shorts = new short[length];
+                }
+                break;
+            case CvType.CV_32S:
+                if (ints == null || ints.length < length || ints.length % channels != 0) {
+                    ints = new int[length];
+                }
+                break;
+            case CvType.CV_32F:
+                if (floats == null || floats.length < length || floats.length % channels != 0) {
+                    floats = new float[length];
+                }
+                break;
+            case CvType.CV_64F:
+                if (doubles == null || doubles.length < length || doubles.length % channels != 0) {
+                    doubles = new double[length];
+                }
+                break;
+            default:
+                throw new RuntimeException("不支持的图像深度：" + CvType.typeToString(type));
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.channels = channels;
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * Mat类型，例如 CvType.CV_8UC3
+     * @return
+     */
+    public int getType() {
+        return CvType.makeType(depth, channels);
+    }
+
+    /**
+     * 有效元素个数：rows * cols * channels
+     * @return
+     */
+    public int length() {
+        return rows * cols * channels;
+    }
+
+    /**
+     * 每一行的元素个数：cols * channels
+     * @return
+     */
+    public int rowStride() {
+        return cols * channels;
+    }
+
+    /**
+     * (row, col)像素第一个通道在数组中的下标
+     */
+    public int index(int row, int col) {
+        return (row * cols + col) * channels;
+    }
+
+    /**
+     * (row, col)像素第channel个通道在数组中的下标
+     */
+    public int index(int row, int col, int channel) {
+        return (row * cols + col) * channels + channel;
+    }
+
+    /**
+     * 获取(row, col)点第一个通道的像素值
+     */
+    public int get(int row, int col) {
+        return getInt(index(row, col));
+    }
+
+    /**
+     * 获取(row, col)点指定通道的像素值
+     */
+    public int get(int row, int col, int channel) {
+        return getInt(index(row, col, channel));
+    }
+
+    /**
+     * 设置(row, col)点第一个通道的像素值，超出范围的值会被截断
+     */
+    public void set(int row, int col, int value) {
+        setAt(index(row, col), value);
+    }
+
+    /**
+     * 设置(row, col)点指定通道的像素值，和 Mat.put 一样会四舍五入并截断到深度的取值范围
+     */
+    public void set(int row, int col, int channel, double value) {
+        setAt(index(row, col, channel), value);
+    }
+
+    /**
+     * 按数组下标获取像素值(整型)
+     * @param i 数组下标
+     * @return
+     */
+    public int getInt(int i) {
+        switch (depth) {
+            case CvType.CV_8U:
+                return bytes[i] & 0xFF;
+            case CvType.CV_8S:
+                return bytes[i];
+            case CvType.CV_16U:
+                return shorts[i] & 0xFFFF;
+            case CvType.CV_16S:
+                return shorts[i];
+            case CvType.CV_32S:
+                return ints[i];
+            case CvType.CV_32F:
+                return (int) floats[i];
+            default:
+                return (int) doubles[i];
+        }
+    }
+
+    /**
+     * 按数组下标获取像素值
+     * @param i 数组下标
+     * @return
+     */
+    public double getAt(int i) {
+        if (depth == CvType.CV_32F) {
+            return floats[i];
+        }
+        if (depth == CvType.CV_64F) {
+            return doubles[i];
+        }
+        return getInt(i);
+    }
+
+    /**
+     * 按数组下标设置像素值(整型)，超出范围的值会被截断
+     * @param i 数组下标
+     * @param value
+     */
+    public void setAt(int i, int value) {
+        switch (depth) {
+            case CvType.CV_8U:
+                bytes[i] = (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+                break;
+            case CvType.CV_8S:
+                bytes[i] = (byte) (value < -128 ? -128 : (value > 127 ? 127 : value));
+                break;
+            case CvType.CV_16U:
+                shorts[i] = (short) (value < 0 ? 0 : (value > 65535 ? 65535 : value));
+                break;
+            case CvType.CV_16S:
+                shorts[i] = (short) (value < -32768 ? -32768 : (value > 32767 ? 32767 : value));
+                break;
+            case CvType.CV_32S:
+                ints[i] = value;
+                break;
+            case CvType.CV_32F:
+                floats[i] = value;
+                break;
+            default:
+                doubles[i] = value;
+                break;
+        }
+    }
+
+    /**
+     * 按数组下标设置像素值，整型深度下和 Mat.put(double...) 一样四舍五入(银行家舍入)并截断
+     * @param i 数组下标
+     * @param value
+     */
+    public void setAt(int i, double value) {
+        if (depth == CvType.CV_32F) {
+            floats[i] = (float) value;
+            return;
+        }
+        if (depth == CvType.CV_64F) {
+            doubles[i] = value;
+            return;
+        }
+        double r = Math.rint(value);
+        if (r != r) {
+            // NaN 与 saturate_cast 保持一致，按0处理
+            r = 0;
+        }
+        setAt(i, r > Integer.MAX_VALUE ? Integer.MAX_VALUE : (r < Integer.MIN_VALUE ? Integer.MIN_VALUE : (int) r));
+    }
+
+    /**
+     * 用指定值填充整个缓冲区
+     * @param value
+     */
+    public void fill(int value) {
+        int length = length();
+        for (int i = 0; i < length; i++) {
+            setAt(i, value);
+        }
+    }
+
+    /**
+     * 拷贝一份独立的缓冲区
+     * @return
+     */
+    public PixelBuffer copy() {
+        PixelBuffer copy = new PixelBuffer(rows, cols, getType());
+        int length = length();
+        switch (depth) {
+            case CvType.CV_8U:
+            case CvType.CV_8S:
+                System.arraycopy(bytes, 0, copy.bytes, 0, length);
+                break;
+            case CvType.CV_16U:
+            case CvType.CV_16S:
+                System.arraycopy(shorts, 0, copy.shorts, 0, length);
+                break;
+            case CvType.CV_32S:
+                System.arraycopy(ints, 0, copy.ints, 0, length);
+                break;
+            case CvType.CV_32F:
+                System.arraycopy(floats, 0, copy.floats, 0, length);
+                break;
+            default:
+                System.arraycopy(doubles, 0, copy.doubles, 0, length);
+                break;
+        }
+        return copy;
+    }
+}
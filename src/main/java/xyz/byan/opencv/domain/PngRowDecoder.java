@@ -0,0 +1,300 @@
+package xyz.byan.opencv.domain;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * @author: bai
+ * @date: 2026/10/19 02:30.
+ * @description: 按行顺序解码 PNG
+ * ImageIO 的 PNG 解码器每次按区域读取都要从头解压到区域末尾，按条带读取超大图像时总解码量与 行数²/条带行数 成正比；
+ * 这里保留解压和反滤波的状态，每次从上次结束的行继续解码，整幅图像只解码一遍。
+ * 只支持 ImageIO 会原样输出像素值的格式：非隔行、8位的灰度、RGB 和不带透明度的调色板图像，其他格式由 open 返回空
+ */
+class PngRowDecoder implements AutoCloseable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+
+    private final InflaterInputStream pixels;
+    private final int width;
+    private final int height;
+    private final int colorType;
+    /**
+     * 每个像素的字节数
+     */
+    private final int bpp;
+    /**
+     * 调色板，按 B、G、R 顺序存储
+     */
+    private final byte[] palette;
+    private byte[] previous;
+    private byte[] current;
+    private int nextRow;
+
+    private PngRowDecoder(DataInputStream chunks, int width, int height, int colorType, byte[] palette, int firstIdatLength) {
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.bpp = colorType == RGB ? 3 : 1;
+        this.palette = palette;
+        this.previous = new byte[width * bpp];
+        this.current = new byte[width * bpp];
+        this.pixels = new InflaterInputStream(new IdatStream(chunks, firstIdatLength), new Inflater(), 64 * 1024);
+    }
+
+    /**
+     * 打开 PNG 文件
+     * @param file
+     * @return 不支持按行顺序解码时为空
+     * @throws IOException
+     */
+    static PngRowDecoder open(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 64 * 1024));
+        try {
+            byte[] signature = new byte[SIGNATURE.length];
+            in.readFully(signature);
+            if (!Arrays.equals(signature, SIGNATURE)) {
+                in.close();
+                return null;
+            }
+            int width = 0, height = 0, colorType = -1;
+            byte[] palette = null;
+            while (true) {
+                int length = in.readInt();
+                String type = readType(in);
+                if ("IHDR".equals(type)) {
+                    width = in.readInt();
+                    height = in.readInt();
+                    int bitDepth = in.readUnsignedByte();
+                    colorType = in.readUnsignedByte();
+                    in.readUnsignedByte();
+                    in.readUnsignedByte();
+                    int interlace = in.readUnsignedByte();
+                    skipFully(in, length - 13 + 4);
+                    if (bitDepth != 8 || interlace != 0 || (colorType != GRAY && colorType != RGB && colorType != PALETTE)) {
+                        in.close();
+                        return null;
+                    }
+                } else if ("PLTE".equals(type)) {
+                    byte[] rgb = new byte[length];
+                    in.readFully(rgb);
+                    skipFully(in, 4);
+                    palette = new byte[256 * 3];
+                    for (int i = 0; i < length / 3; i++) {
+                        palette[i * 3] = rgb[i * 3 + 2];
+                        palette[i * 3 + 1] = rgb[i * 3 + 1];
+                        palette[i * 3 + 2] = rgb[i * 3];
+                    }
+                } else if ("tRNS".equals(type) || "IEND".equals(type)) {
+                    // 带透明度的图像由 ImageIO 与黑色背景混合，这里不做处理
+                    in.close();
+                    return null;
+                } else if ("IDAT".equals(type)) {
+                    if (colorType < 0 || (colorType == PALETTE && palette == null)) {
+                        in.close();
+                        return null;
+                    }
+                    return new PngRowDecoder(in, width, height, colorType, palette, length);
+                } else {
+                    skipFully(in, length + 4);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 下一次解码的行号
+     * @return
+     */
+    int nextRow() {
+        return nextRow;
+    }
+
+    /**
+     * 输出的通道数：灰度图为1，其余为3(BGR)
+     * @return
+     */
+    int channels() {
+        return colorType == GRAY ? 1 : 3;
+    }
+
+    /**
+     * 从 nextRow 开始继续解码 count 行
+     * @param count 行数
+     * @return 按行连续存储的像素，灰度图每个像素1字节，其余3字节(B、G、R)
+     * @throws IOException
+     */
+    byte[] read(int count) throws IOException {
+        if (count < 0 || nextRow + count > height) {
+            throw new IOException("超出图像范围：" + nextRow + "+" + count + "，共" + height + "行");
+        }
+        int outStride = width * channels();
+        byte[] out = new byte[count * outStride];
+        for (int r = 0; r < count; r++) {
+            int filter = pixels.read();
+            if (filter < 0) {
+                throw new EOFException("PNG 数据不完整");
+            }
+            readFully(current);
+            unfilter(filter);
+            int offset = r * outStride;
+            if (colorType == GRAY) {
+                System.arraycopy(current, 0, out, offset, width);
+            } else if (colorType == RGB) {
+                for (int i = 0; i < width; i++) {
+                    out[offset + i * 3] = current[i * 3 + 2];
+                    out[offset + i * 3 + 1] = current[i * 3 + 1];
+                    out[offset + i * 3 + 2] = current[i * 3];
+                }
+            } else {
+                for (int i = 0; i < width; i++) {
+                    int index = (current[i] & 0xFF) * 3;
+                    out[offset + i * 3] = palette[index];
+                    out[offset + i * 3 + 1] = palette[index + 1];
+                    out[offset + i * 3 + 2] = palette[index + 2];
+                }
+            }
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            nextRow++;
+        }
+        return out;
+    }
+
+    private void unfilter(int filter) throws IOException {
+        byte[] cur = current, prev = previous;
+        int n = cur.length;
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < n; i++) {
+                    cur[i] += cur[i - bpp];
+                }
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    cur[i] += prev[i];
+                }
+                break;
+            case 3:
+                for (int i = 0; i < n; i++) {
+                    int left = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    cur[i] += (left + (prev[i] & 0xFF)) >> 1;
+                }
+                break;
+            case 4:
+                for (int i = 0; i < n; i++) {
+                    int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    int b = prev[i] & 0xFF;
+                    int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    cur[i] += pa <= pb && pa <= pc ? a : (pb <= pc ? b : c);
+                }
+                break;
+            default:
+                throw new IOException("不支持的 PNG 行滤波类型：" + filter);
+        }
+    }
+
+    private void readFully(byte[] buffer) throws IOException {
+        int off = 0;
+        while (off < buffer.length) {
+            int n = pixels.read(buffer, off, buffer.length - off);
+            if (n < 0) {
+                throw new EOFException("PNG 数据不完整");
+            }
+            off += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pixels.close();
+    }
+
+    private static String readType(DataInputStream in) throws IOException {
+        byte[] type = new byte[4];
+        in.readFully(type);
+        return new String(type, StandardCharsets.US_ASCII);
+    }
+
+    private static void skipFully(DataInputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("PNG 数据不完整");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * 把连续的 IDAT 块拼接成一个数据流，跳过块之间的 CRC 和块头
+     */
+    private static class IdatStream extends FilterInputStream {
+        private final DataInputStream chunks;
+        private int remaining;
+        private boolean end;
+
+        IdatStream(DataInputStream chunks, int firstLength) {
+            super(chunks);
+            this.chunks = chunks;
+            this.remaining = firstLength;
+        }
+
+        private boolean advance() throws IOException {
+            while (remaining == 0 && !end) {
+                skipFully(chunks, 4);
+                int length = chunks.readInt();
+                if ("IDAT".equals(readType(chunks))) {
+                    remaining = length;
+                } else {
+                    end = true;
+                }
+            }
+            return !end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!advance()) {
+                return -1;
+            }
+            remaining--;
+            return chunks.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!advance()) {
+                return -1;
+            }
+            int n = chunks.read(b, off, Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import xyz.byan.opencv.util.ParallelUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 23:10.
+ * @description: 图像每一列(或每一行)第一个通道的统计信息：和、最小值、最大值
+ * 直接在 PixelBuffer 的数组上计算，不创建装箱对象；每一列(行)的累加顺序都是从上到下(从左到右)，
+ * 与按 List 逐个相加的结果一致，并行时按列(行)分段，每段内的累加顺序不变
+ */
+@Getter
+public class Projection {
+
+    /**
+     * true 表示按列统计，false 表示按行统计
+     */
+    private final boolean column;
+    /**
+     * 列数(按列统计时)或行数(按行统计时)
+     */
+    private final int count;
+    /**
+     * 每一列(行)的像素个数
+     */
+    private final int length;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+
+    private Projection(boolean column, int count, int length) {
+        this.column = column;
+        this.count = count;
+        this.length = length;
+        this.sum = new double[count];
+        this.min = new double[count];
+        this.max = new double[count];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * 按列统计
+     * @param buffer
+     * @return
+     */
+    public static Projection columns(PixelBuffer buffer) {
+        return of(buffer, true, null);
+    }
+
+    /**
+     * 按行统计
+     * @param buffer
+     * @return
+     */
+    public static Projection rows(PixelBuffer buffer) {
+        return of(buffer, false, null);
+    }
+
+    /**
+     * 按列或按行统计
+     * @param buffer
+     * @param column true 表示按列统计，false 表示按行统计
+     * @param pool 并行执行的线程池，为空时顺序执行
+     * @return
+     */
+    public static Projection of(PixelBuffer buffer, boolean column, ForkJoinPool pool) {
+        int rows = buffer.getRows(), cols = buffer.getCols();
+        Projection p = column ? new Projection(true, cols, rows) : new Projection(false, rows, cols);
+        if (column) {
+            // 按列分段，每个任务从上到下扫描自己负责的列
+            ParallelUtils.forEachBand(pool, cols, ParallelUtils.DEFAULT_BAND_ROWS, (from, to) -> {
+                for (int i = 0; i < rows; i++) {
+                    p.accumulate(buffer, i, from, to, true);
+                }
+            });
+        } else {
+            ParallelUtils.forEachBand(pool, rows, ParallelUtils.DEFAULT_BAND_ROWS, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    p.accumulate(buffer, i, 0, cols, false);
+                }
+            });
+        }
+        return p;
+    }
+
+    /**
+     * 累加第 row 行中[from, to)列的像素
+     */
+    private void accumulate(PixelBuffer buffer, int row, int from, int to, boolean column) {
+        int channels = buffer.getChannels();
+        int base = buffer.index(row, 0);
+        byte[] bytes = buffer.getDepth() == CvType.CV_8U ? buffer.getBytes() : null;
+        for (int j = from; j < to; j++) {
+            int i = base + j * channels;
+            double v = bytes != null ? bytes[i] & 0xFF : buffer.getAt(i);
+            int k = column ? j : row;
+            sum[k] += v;
+            if (v < min[k]) {
+                min[k] = v;
+            }
+            if (v > max[k]) {
+                max[k] = v;
+            }
+        }
+    }
+
+    /**
+     * 第i列(行)的平均值
+     * @param i
+     * @return
+     */
+    public double mean(int i) {
+        return sum[i] / length;
+    }
+
+    /**
+     * 每一列(行)的平均值
+     * @return
+     */
+    public double[] mean() {
+        double[] ret = new double[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = sum[i] / length;
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,218 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 22:40.
+ * @description: 内存映射的原始帧文件
+ * 文件由64字节的文件头和连续存储的像素数据组成，通过 FileChannel.map 映射到内存，
+ * 返回的 Mat 直接使用映射的内存，读写都不需要编解码；对 Mat 的修改会写回文件，其他进程映射同一个文件时可以看到。
+ *
+ * 文件头(小端)：
+ * <pre>
+ * 0  magic      "OCVRAW01"
+ * 8  int        版本
+ * 12 int        行数
+ * 16 int        列数
+ * 20 int        类型(CvType)
+ * 24 int        像素数据的字节序，0为小端，1为大端
+ * 28 long       像素数据的字节数
+ * 36 保留
+ * 64 像素数据，按行连续存储
+ * </pre>
+ *
+ * Mat 只引用映射的内存，使用期间必须持有 RawFrame；close 之后不能再使用 Mat。
+ * 只读打开(openReadOnly)的帧映射为只读内存，不能写入 Mat，否则进程会崩溃
+ */
+@Getter
+public class RawFrame implements Closeable {
+
+    /**
+     * 文件头的字节数，像素数据从这里开始，按64字节对齐
+     */
+    public static final int HEADER_SIZE = 64;
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = "OCVRAW01".getBytes(StandardCharsets.US_ASCII);
+
+    private final File file;
+    private final int rows;
+    private final int cols;
+    private final int type;
+    /**
+     * 是否只读
+     */
+    private final boolean readOnly;
+    /**
+     * 整个文件的映射，close 后为空
+     */
+    private MappedByteBuffer buffer;
+    /**
+     * 以像素数据为存储的矩阵
+     */
+    private final Mat mat;
+
+    private RawFrame(File file, int rows, int cols, int type, boolean readOnly, MappedByteBuffer buffer) {
+        this.file = file;
+        this.rows = rows;
+        this.cols = cols;
+        this.type = type;
+        this.readOnly = readOnly;
+        this.buffer = buffer;
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(HEADER_SIZE);
+        this.mat = new Mat(rows, cols, type, duplicate.slice());
+    }
+
+    /**
+     * 新建一个帧文件，已存在时覆盖；像素数据不做初始化，可以直接作为 OpenCV 函数的输出
+     * @param file
+     * @param rows
+     * @param cols
+     * @param type
+     * @return
+     * @throws IOException
+     */
+    public static RawFrame create(File file, int rows, int cols, int type) throws IOException {
+        long length = (long) rows * cols * CvType.ELEM_SIZE(type);
+        MappedByteBuffer buffer = map(file, HEADER_SIZE + length, true, false);
+        ByteBuffer header = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(rows);
+        header.putInt(cols);
+        header.putInt(type);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1);
+        header.putLong(length);
+        return new RawFrame(file, rows, cols, type, false, buffer);
+    }
+
+    /**
+     * 打开已有的帧文件，对 Mat 的修改会写回文件
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static RawFrame open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * 只读打开已有的帧文件，适用于只读的文件或挂载；返回的 Mat 不能写入
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static RawFrame openReadOnly(File file) throws IOException {
+        return open(file, true);
+    }
+
+    private static RawFrame open(File file, boolean readOnly) throws IOException {
+        MappedByteBuffer buffer = map(file, -1, false, readOnly);
+        ByteBuffer header = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < HEADER_SIZE) {
+            throw new IOException("不是原始帧文件：" + file);
+        }
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是原始帧文件：" + file);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的原始帧版本：" + version);
+        }
+        int rows = header.getInt();
+        int cols = header.getInt();
+        int type = header.getInt();
+        ByteOrder order = header.getInt() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        long length = header.getLong();
+        if (rows < 0 || cols < 0 || length != (long) rows * cols * CvType.ELEM_SIZE(type)
+                || buffer.capacity() < HEADER_SIZE + length) {
+            throw new IOException("原始帧文件已损坏：" + file);
+        }
+        if (CvType.ELEM_SIZE(type) / CvType.channels(type) > 1 && order != ByteOrder.nativeOrder()) {
+            throw new IOException("原始帧的字节序与本机不一致：" + order);
+        }
+        return new RawFrame(file, rows, cols, type, readOnly, buffer);
+    }
+
+    /**
+     * 把矩阵保存为帧文件，不做编码
+     * @param src
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Mat src, File file) throws IOException {
+        try (RawFrame frame = create(file, src.rows(), src.cols(), src.type())) {
+            src.copyTo(frame.mat);
+            frame.force();
+        }
+    }
+
+    /**
+     * 读取帧文件，返回的矩阵复制了像素数据，与文件无关，由调用方负责释放
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static Mat read(File file) throws IOException {
+        try (RawFrame frame = openReadOnly(file)) {
+            return frame.mat.clone();
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long length, boolean create, boolean readOnly) throws IOException {
+        if (!create && !file.isFile()) {
+            throw new IOException("原始帧文件不存在：" + file);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+             FileChannel channel = raf.getChannel()) {
+            if (create) {
+                raf.setLength(length);
+            } else {
+                length = channel.size();
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("单个原始帧不能超过2GB：" + file);
+            }
+            // 映射在通道关闭后仍然有效
+            return channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+    }
+
+    /**
+     * 把对 Mat 的修改刷新到磁盘，用于检查点
+     */
+    public void force() {
+        if (buffer == null) {
+            throw new RuntimeException("原始帧已关闭：" + file);
+        }
+        if (!readOnly) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 释放 Mat 的头并丢弃对映射的引用，之后不能再使用 Mat；
+     * Java 8 没有解除映射的公开方法，映射的内存在没有其他引用后由 GC 解除
+     */
+    @Override
+    public void close() {
+        mat.release();
+        buffer = null;
+    }
+}
@@ -0,0 +1,72 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 22:05.
+ * @description: 把结果按行写入原始像素文件(无文件头，按行连续存储，每个像素按通道交错)
+ * 每个分块按行定位写入，不需要在内存中保留整幅图像；只支持8位图像
+ */
+@Getter
+public class RawTileSink implements TileSink, Closeable {
+
+    private final File file;
+    private final int rows;
+    private final int cols;
+    private final int type;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private byte[] line = new byte[0];
+
+    public RawTileSink(File file, int rows, int cols, int type) throws IOException {
+        if (CvType.depth(type) != CvType.CV_8U) {
+            throw new RuntimeException("只支持8位图像：" + CvType.typeToString(type));
+        }
+        this.file = file;
+        this.rows = rows;
+        this.cols = cols;
+        this.type = type;
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength((long) rows * cols * CvType.channels(type));
+        this.channel = raf.getChannel();
+    }
+
+    @Override
+    public synchronized void write(Rect region, Mat tile) {
+        int channels = CvType.channels(type);
+        int length = region.width * channels;
+        if (line.length < length) {
+            line = new byte[length];
+        }
+        try {
+            for (int i = 0; i < region.height; i++) {
+                tile.get(i, 0, line);
+                long position = ((long) (region.y + i) * cols + region.x) * channels;
+                ByteBuffer buffer = ByteBuffer.wrap(line, 0, length);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入分块失败：" + region, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        raf.close();
+    }
+}
@@ -0,0 +1,98 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+import xyz.byan.opencv.util.ImagesUtil;
+import xyz.byan.opencv.util.RemoveNoiseUtils;
+
+import java.util.function.UnaryOperator;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 22:10.
+ * @description: 可以分块执行的滤波
+ * 每个输出点只依赖输入中距离不超过 radius 的点，分块时每块向四周多读 radius 的重叠区(halo)，
+ * 处理后只保留中间部分，拼接的结果与整幅图像一次处理的结果一致
+ */
+@Getter
+public class TileFilter {
+
+    /**
+     * 重叠区的宽度
+     */
+    private final int radius;
+    /**
+     * 对一个分块(含重叠区)的处理，返回同样大小的新矩阵，不修改输入
+     */
+    private final UnaryOperator<Mat> function;
+
+    public TileFilter(int radius, UnaryOperator<Mat> function) {
+        if (radius < 0) {
+            throw new RuntimeException("重叠区宽度不能为负数：" + radius);
+        }
+        this.radius = radius;
+        this.function = function;
+    }
+
+    /**
+     * 处理一个分块
+     * @param tile
+     * @return
+     */
+    public Mat apply(Mat tile) {
+        return function.apply(tile);
+    }
+
+    /**
+     * 先执行当前滤波再执行 next，重叠区宽度相加
+     * @param next
+     * @return
+     */
+    public TileFilter then(TileFilter next) {
+        return new TileFilter(radius + next.radius, tile -> {
+            Mat mid = function.apply(tile);
+            Mat ret = next.function.apply(mid);
+            mid.release();
+            return ret;
+        });
+    }
+
+    /**
+     * 均值滤波
+     * @param cellSize 滤波方框的大小
+     * @return
+     */
+    public static TileFilter averageFiltering(int cellSize) {
+        return new TileFilter(ImagesUtil.filterRadius(cellSize), tile -> ImagesUtil.averageFiltering(tile, cellSize));
+    }
+
+    /**
+     * 高斯滤波
+     * @param cellSize 滤波方框的大小
+     * @param variance 高斯函数的标准差
+     * @return
+     */
+    public static TileFilter gaussianFiltering(int cellSize, double variance) {
+        return new TileFilter(ImagesUtil.filterRadius(cellSize), tile -> ImagesUtil.gaussianFiltering(tile, cellSize, variance));
+    }
+
+    /**
+     * 去雾，暗通道的最小值滤波决定重叠区宽度
+     * @param cellSize 去雾时使用的方框大小
+     * @return
+     */
+    public static TileFilter disFog(int cellSize) {
+        return new TileFilter(ImagesUtil.filterRadius(cellSize), tile -> ImagesUtil.disFog(tile, cellSize));
+    }
+
+    /**
+     * 多次8邻域降噪，使用双缓冲模式：每次迭代的影响范围是1个点，重叠区宽度等于迭代次数。
+     * 原地更新模式中一个点的变化会沿扫描方向传播到任意远处，不能分块执行
+     * @param pNum 阀值
+     * @param iterations 迭代次数
+     * @return
+     */
+    public static TileFilter eghitRemoveNoise(int pNum, int iterations) {
+        return new TileFilter(iterations, tile -> RemoveNoiseUtils.eghitRemoveNoise(tile.clone(), pNum, iterations, null));
+    }
+}
@@ -0,0 +1,32 @@
+package xyz.byan.opencv.domain;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 21:50.
+ * @description: 分块写入处理结果的目标
+ */
+public interface TileSink {
+
+    /**
+     * 写入指定区域
+     * @param region 区域
+     * @param tile 区域大小的矩阵，写入后由调用方释放
+     */
+    void write(Rect region, Mat tile);
+
+    /**
+     * 写入内存中的 Mat
+     * @param dst 结果矩阵，尺寸需要与数据源一致
+     * @return
+     */
+    static TileSink of(Mat dst) {
+        return (region, tile) -> {
+            Mat sub = dst.submat(region);
+            tile.copyTo(sub);
+            sub.release();
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package xyz.byan.opencv.domain;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 21:50.
+ * @description: 分块读取图像的数据源，每次只读取指定的区域，不需要把整幅图像加载到内存中
+ */
+public interface TileSource {
+
+    /**
+     * 图像的行数
+     */
+    int rows();
+
+    /**
+     * 图像的列数
+     */
+    int cols();
+
+    /**
+     * 图像的类型(CvType)
+     */
+    int type();
+
+    /**
+     * 读取指定区域
+     * @param region 区域，必须在图像范围内
+     * @return 区域大小的矩阵，由调用方负责释放
+     */
+    Mat read(Rect region);
+
+    /**
+     * 以内存中的 Mat 作为数据源，返回的区域与原图共享内存
+     * @param src
+     * @return
+     */
+    static TileSource of(Mat src) {
+        return new TileSource() {
+            @Override
+            public int rows() {
+                return src.rows();
+            }
+
+            @Override
+            public int cols() {
+                return src.cols();
+            }
+
+            @Override
+            public int type() {
+                return src.type();
+            }
+
+            @Override
+            public Mat read(Rect region) {
+                return src.submat(region);
+            }
+        };
+    }
+
+    /**
+     * 以图像文件作为数据源，通过 ImageIO 按区域解码
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static ImageTileSource of(File file) throws IOException {
+        return new ImageTileSource(file);
+    }
+}
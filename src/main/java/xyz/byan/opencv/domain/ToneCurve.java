@@ -0,0 +1,295 @@
+package xyz.byan.opencv.domain;
+
+import lombok.Getter;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 17:05.
+ * @description: 8位图像的色调曲线(查找表 LUT)
+ * 每个通道一张256项的查找表，亮度、对比度等逐像素调节先编译成查找表，多个调节可以串联合成一张表，
+ * 最后通过一次 Core.LUT 应用到图像上，串联多少个调节都只需要遍历一次像素。
+ * 每一步都按 Mat.put 的规则四舍五入并截断到[0, 255]，因此结果与逐个调用 ImagesUtil 中的方法完全一致。
+ *
+ * 用法：ToneCurve.of(img).brightness(150).contrast(140).apply(img)
+ */
+@Getter
+public class ToneCurve {
+
+    public static final int MIN_VAL = 0;
+
+    public static final int MAX_VAL = 255;
+
+    /** 大于中间值表示增强效果,小于中间值表示消减效果 **/
+    public static final int BASE_VAL = (MIN_VAL + MAX_VAL) >>> 1;
+
+    /**
+     * 通道数
+     */
+    private final int channels;
+    /**
+     * 每个通道的查找表，table[k][v] 表示第k个通道原始值v调节后的值
+     */
+    private final int[][] table;
+    /**
+     * 每个通道当前输出的最小值，用于对比度调节计算中间值
+     */
+    private final int[] low;
+    /**
+     * 每个通道当前输出的最大值，用于对比度调节计算中间值
+     */
+    private final int[] high;
+
+    /**
+     * 创建一条恒等曲线
+     * @param channels 通道数
+     * @param low 每个通道原始像素的最小值
+     * @param high 每个通道原始像素的最大值
+     */
+    public ToneCurve(int channels, int[] low, int[] high) {
+        this.channels = channels;
+        this.table = new int[channels][256];
+        this.low = low.clone();
+        this.high = high.clone();
+        for (int k = 0; k < channels; k++) {
+            for (int v = 0; v < 256; v++) {
+                table[k][v] = v;
+            }
+        }
+    }
+
+    /**
+     * 根据图像创建一条恒等曲线，并记录每个通道像素值的范围
+     * @param src 8位图像
+     * @return
+     */
+    public static ToneCurve of(Mat src) {
+        if (CvType.depth(src.type()) != CvType.CV_8U) {
+            throw new RuntimeException("查找表只支持8位图像：" + CvType.typeToString(src.type()));
+        }
+        int channels = src.channels();
+        int[] low = new int[channels];
+        int[] high = new int[channels];
+        if (channels == 1) {
+            Core.MinMaxLocResult result = Core.minMaxLoc(src);
+            low[0] = (int) result.minVal;
+            high[0] = (int) result.maxVal;
+        } else {
+            Mat channel = new Mat();
+            for (int k = 0; k < channels; k++) {
+                Core.extractChannel(src, channel, k);
+                Core.MinMaxLocResult result = Core.minMaxLoc(channel);
+                low[k] = (int) result.minVal;
+                high[k] = (int) result.maxVal;
+            }
+            channel.release();
+        }
+        return new ToneCurve(channels, low, high);
+    }
+
+    /**
+     * 创建一条恒等曲线，像素值范围按[0, 255]计，不需要计算对比度时使用，避免额外遍历图像
+     * @param channels 通道数
+     * @return
+     */
+    public static ToneCurve identity(int channels) {
+        int[] low = new int[channels];
+        int[] high = new int[channels];
+        Arrays.fill(high, MAX_VAL);
+        return new ToneCurve(channels, low, high);
+    }
+
+    /**
+     * 串联亮度调节，与 ImagesUtil.shiftBrightness 的算法一致
+     * @param val 调节系数
+     * @return 当前曲线
+     */
+    public ToneCurve brightness(int val) {
+        if (val == BASE_VAL) {
+            return this;
+        }
+        boolean flag = val > BASE_VAL;
+        double f = flag ? 1.0 * (MAX_VAL - val) / BASE_VAL : 1.0 * val / BASE_VAL;
+        for (int k = 0; k < channels; k++) {
+            for (int v = 0; v < 256; v++) {
+                table[k][v] = saturate(flag ? 255 - table[k][v] * f : table[k][v] * f);
+            }
+            updateRange(k, flag ? 255 - low[k] * f : low[k] * f, flag ? 255 - high[k] * f : high[k] * f);
+        }
+        return this;
+    }
+
+    /**
+     * 串联对比度调节，与 ImagesUtil.shiftContrast 的算法一致，中间值取上一步输出中所有通道的最大值与最小值的平均值
+     * @param val 调节系数
+     * @return 当前曲线
+     */
+    public ToneCurve contrast(int val) {
+        if (val == BASE_VAL) {
+            return this;
+        }
+        double maxx = -1, minn = 300.0;
+        for (int k = 0; k < channels; k++) {
+            maxx = maxx > high[k] ? maxx : high[k];
+            minn = minn < low[k] ? minn : low[k];
+        }
+        double midd = (maxx + minn) / 2;
+        double a;
+        if (val > BASE_VAL) {
+            if (val == MAX_VAL) {
+                val--;
+            }
+            a = BASE_VAL / (1.0 * (MAX_VAL - val));
+        } else {
+            a = (1.0 * val) / BASE_VAL;
+        }
+        double b = midd * (1 - a);
+        for (int k = 0; k < channels; k++) {
+            for (int v = 0; v < 256; v++) {
+                table[k][v] = saturate(a * table[k][v] + b);
+            }
+            updateRange(k, a * low[k] + b, a * high[k] + b);
+        }
+        return this;
+    }
+
+    /**
+     * 串联饱和度调节，只作用于HSV图像的S通道，与 ImagesUtil.shiftSaturability 的算法一致
+     * @param val 调节系数
+     * @return 当前曲线
+     */
+    public ToneCurve saturation(int val) {
+        if (val == BASE_VAL) {
+            return this;
+        }
+        boolean flag = val > BASE_VAL;
+        double f = flag ? 1.0 * (val - BASE_VAL) / BASE_VAL : 1.0 * val / BASE_VAL;
+        int[] curve = new int[256];
+        for (int v = 0; v < 256; v++) {
+            curve[v] = saturate(flag ? v + (MAX_VAL - v) * f : v * f);
+        }
+        return channel(1, curve);
+    }
+
+    /**
+     * 串联另一条曲线：先应用当前曲线，再应用next
+     * @param next 通道数必须相同
+     * @return 当前曲线
+     */
+    public ToneCurve then(ToneCurve next) {
+        if (next.channels != channels) {
+            throw new RuntimeException("曲线的通道数不一致");
+        }
+        for (int k = 0; k < channels; k++) {
+            for (int v = 0; v < 256; v++) {
+                table[k][v] = next.table[k][table[k][v]];
+            }
+            int l = next.table[k][low[k]], h = next.table[k][high[k]];
+            low[k] = Math.min(l, h);
+            high[k] = Math.max(l, h);
+        }
+        return this;
+    }
+
+    /**
+     * 单独调整某个通道的曲线：把该通道的输出v映射为 curve[v]
+     * @param channel 通道下标
+     * @param curve 256项的映射表
+     * @return 当前曲线
+     */
+    public ToneCurve channel(int channel, int[] curve) {
+        int[] t = table[channel];
+        for (int v = 0; v < 256; v++) {
+            t[v] = saturate(curve[t[v]]);
+        }
+        int l = saturate(curve[low[channel]]), h = saturate(curve[high[channel]]);
+        low[channel] = Math.min(l, h);
+        high[channel] = Math.max(l, h);
+        return this;
+    }
+
+    /**
+     * 生成 Core.LUT 使用的 1x256 查找表
+     * @return
+     */
+    public Mat toLut() {
+        return toLut(new Mat());
+    }
+
+    /**
+     * 生成 Core.LUT 使用的 1x256 查找表，写入lut中
+     * @param lut 尺寸、类型一致时直接复用
+     * @return lut
+     */
+    public Mat toLut(Mat lut) {
+        int n = sameTables() ? 1 : channels;
+        byte[] data = new byte[256 * n];
+        for (int v = 0; v < 256; v++) {
+            for (int k = 0; k < n; k++) {
+                data[v * n + k] = (byte) table[k][v];
+            }
+        }
+        lut.create(1, 256, CvType.makeType(CvType.CV_8U, n));
+        lut.put(0, 0, data);
+        return lut;
+    }
+
+    /**
+     * 把曲线应用到图像上，返回新的图像
+     * @param src 8位图像，通道数必须与曲线一致
+     * @return
+     */
+    public Mat apply(Mat src) {
+        return apply(src, new Mat());
+    }
+
+    /**
+     * 把曲线应用到图像上，结果写入dst(可以与src相同)
+     * @param src 8位图像，通道数必须与曲线一致
+     * @param dst
+     * @return dst
+     */
+    public Mat apply(Mat src, Mat dst) {
+        if (src.channels() != channels || CvType.depth(src.type()) != CvType.CV_8U) {
+            throw new RuntimeException("图像与曲线的类型不一致：" + CvType.typeToString(src.type()));
+        }
+        // 查找表从当前线程的 MatPool 中获取，逐帧调用时不申请本地内存
+        MatPool pool = MatPool.get();
+        Mat lut = toLut(pool.acquire(1, 256, CvType.makeType(CvType.CV_8U, sameTables() ? 1 : channels)));
+        Core.LUT(src, lut, dst);
+        pool.release(lut);
+        return dst;
+    }
+
+    /**
+     * 所有通道的查找表是否相同，相同时只需要单通道的查找表
+     */
+    private boolean sameTables() {
+        for (int k = 1; k < channels; k++) {
+            for (int v = 0; v < 256; v++) {
+                if (table[k][v] != table[0][v]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 与 Mat.put 一致：四舍五入并截断到[0, 255]
+     */
+    private static int saturate(double value) {
+        double r = Math.rint(value);
+        return r < 0 ? 0 : (r > 255 ? 255 : (int) r);
+    }
+
+    private void updateRange(int k, double a, double b) {
+        int l = saturate(a), h = saturate(b);
+        low[k] = Math.min(l, h);
+        high[k] = Math.max(l, h);
+    }
+}
@@ -3,6 +3,9 @@ package xyz.byan.opencv.util;
 import lombok.experimental.UtilityClass;
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.PixelBuffer;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author: bai
@@ -90,31 +93,30 @@ public class BinaryUtils {
             return src;
         }
         int nWhite_sum = 0, nBlack_sum = 0;
-        int i, j;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
+        PixelBuffer buffer = PixelBuffer.of(src);
+        int length = buffer.length();
         int value;
-        for (j = 0; j < height; j++) {
-            for (i = 0; i < width; i++) {
-                value = GeneralUtils.getPixel(src, j, i);
-                if (value > threshold) {
-                    GeneralUtils.setPixel(src, j, i, GeneralUtils.getWHITE());
-                    nWhite_sum++;
-                } else {
-                    GeneralUtils.setPixel(src, j, i, GeneralUtils.getBLACK());
-                    nBlack_sum++;
-                }
+        for (int i = 0; i < length; i++) {
+            value = buffer.getInt(i);
+            if (value > threshold) {
+                buffer.setAt(i, GeneralUtils.getWHITE());
+                nWhite_sum++;
+            } else {
+                buffer.setAt(i, GeneralUtils.getBLACK());
+                nBlack_sum++;
             }
         }
+        buffer.write(src);
 
         if (b) {
             // 白底黑字
             if (nBlack_sum > nWhite_sum) {
-                src = GeneralUtils.turnPixel(src);
+                src = GeneralUtils.turnPixel(src, buffer);
             }
         } else {
             // 黑底白字
             if (nWhite_sum > nBlack_sum) {
-                src = GeneralUtils.turnPixel(src);
+                src = GeneralUtils.turnPixel(src, buffer);
             }
         }
         return src;
@@ -128,74 +130,39 @@ public class BinaryUtils {
      * @return
      */
     public static int getAdapThreshold(Mat src) {
-        int threshold = 0, threshold_new = 127;
-        int nWhite_count, nBlack_count;
-        int nWhite_sum, nBlack_sum;
-        int value, i, j;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-
-        if(width == 0 || height == 0){
-            System.out.println("图像加载异常");
-            return -1;
-        }
-
-        while (threshold != threshold_new) {
-            nWhite_sum = nBlack_sum = 0;
-            nWhite_count = nBlack_count = 0;
-            for (j = 0; j < height; j++) {
-                for (i = 0; i < width; i++) {
-                    value = GeneralUtils.getPixel(src, j, i);
-                    if (value > threshold_new) {
-                        nWhite_count++;
-                        nWhite_sum += value;
-                    } else {
-                        nBlack_count++;
-                        nBlack_sum += value;
-                    }
-                }
-            }
-            threshold = threshold_new;
-            if(nWhite_count == 0 || nBlack_count == 0){
-                threshold_new = (nWhite_sum + nBlack_sum) / (nWhite_count + nBlack_count);
-            }else{
-                threshold_new = (nWhite_sum / nWhite_count + nBlack_sum / nBlack_count) / 2;
-            }
-
-        }
-
-        return threshold;
+        return getAdapThreshold(PixelBuffer.of(src));
     }
 
-
-
+    /**
+     * 作用：自适应选取阀值，8位图像只统计一次直方图，迭代在直方图上完成
+     *
+     * @param buffer
+     *            图像的像素缓冲区(单通道)
+     * @return
+     */
+    public static int getAdapThreshold(PixelBuffer buffer) {
+        return ThresholdUtils.iterative(buffer);
+    }
 
     /**
-     * 局部自适应二值化
+     * 局部自适应二值化，每一列单独计算阀值，各列在公共线程池中并行处理
      * @param src
      * @return
      */
     public static Mat partBinaryzation(Mat src){
-        int width = GeneralUtils.getImgWidth(src);
-        int height = GeneralUtils.getImgHeight(src);
-        int value;
-        for(int i = 0 ; i < width ; i++){
-            Mat partMat = src.col(i);
-            int thresold = getAdapThreshold(partMat);
-            int black_num = 0 , white_num = 0;
-
-
-            for(int j = 0 ; j < height ; j++){
-                value = GeneralUtils.getPixel(src , j , i);
-                if(value > thresold){
-                    GeneralUtils.setPixel(src , j , i , GeneralUtils.getWHITE());
-                    white_num++;
-                }else{
-                    GeneralUtils.setPixel(src, j, i, GeneralUtils.getBLACK());
-                    black_num++;
-                }
-            }
-        }
+        return partBinaryzation(src, 0, ForkJoinPool.commonPool());
+    }
 
-        return src;
+    /**
+     * 局部自适应二值化
+     * @param src
+     * @param tileRows 每一列中每 tileRows 行单独计算阀值，小于等于0时整列使用一个阀值
+     * @param pool 并行执行的线程池，为空时顺序执行
+     * @return
+     */
+    public static Mat partBinaryzation(Mat src, int tileRows, ForkJoinPool pool){
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ThresholdUtils.columnThreshold(buffer, tileRows, true, pool);
+        return buffer.write(src);
     }
 }
@@ -3,6 +3,8 @@ package xyz.byan.opencv.util;
 import lombok.experimental.UtilityClass;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.ContourDescriptors;
+import xyz.byan.opencv.domain.MatScope;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,30 +24,39 @@ public class ContoursUtils {
      * @return
      */
     public static List<MatOfPoint> findContours(Mat cannyMat) {
-        List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
-        Mat hierarchy = new Mat();
+        return describeContours(cannyMat).sorted();
+    }
 
-        // 寻找轮廓
-        Imgproc.findContours(cannyMat, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
-                new Point(0, 0));
+    /**
+     * 寻找轮廓，返回最大的k个轮廓，按递减顺序
+     *
+     * @param cannyMat
+     * @param k
+     * @return
+     */
+    public static List<MatOfPoint> findContours(Mat cannyMat, int k) {
+        ContourDescriptors descriptors = describeContours(cannyMat);
+        return descriptors.select(descriptors.topK(k));
+    }
+
+    /**
+     * 寻找轮廓，并计算每个轮廓的描述信息(面积、外接矩形、最小外接矩形、周长)
+     *
+     * @param cannyMat
+     * @return
+     */
+    public static ContourDescriptors describeContours(Mat cannyMat) {
+        List<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+        try (MatScope scope = new MatScope()) {
+            // 寻找轮廓，RETR_LIST 不需要层级关系，hierarchy 用完即释放
+            Imgproc.findContours(cannyMat, contours, scope.mat(), Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE,
+                    new Point(0, 0));
+        }
 
         if (contours.size() <= 0) {
             throw new RuntimeException("未找到图像轮廓");
-        } else {
-            // 对contours进行了排序，按递增顺序
-            contours.sort((o1, o2) -> {
-                MatOfPoint2f mat1 = new MatOfPoint2f(o1.toArray());
-                RotatedRect rect1 = Imgproc.minAreaRect(mat1);
-                Rect r1 = rect1.boundingRect();
-
-                MatOfPoint2f mat2 = new MatOfPoint2f(o2.toArray());
-                RotatedRect rect2 = Imgproc.minAreaRect(mat2);
-                Rect r2 = rect2.boundingRect();
-
-                return (int) (r1.area() - r2.area());
-            });
-            return contours;
         }
+        return ContourDescriptors.of(contours);
     }
 
     /**
@@ -56,8 +67,8 @@ public class ContoursUtils {
      * @return
      */
     public static MatOfPoint findMaxContour(Mat cannyMat) {
-        List<MatOfPoint> contours = findContours(cannyMat);
-        return contours.get(contours.size() - 1);
+        ContourDescriptors descriptors = describeContours(cannyMat);
+        return descriptors.getContours().get(descriptors.max());
     }
 
     /**
@@ -68,13 +79,8 @@ public class ContoursUtils {
      * @return
      */
     public static RotatedRect findMaxRect(Mat cannyMat) {
-        MatOfPoint maxContour = findMaxContour(cannyMat);
-
-        MatOfPoint2f matOfPoint2f = new MatOfPoint2f(maxContour.toArray());
-
-        RotatedRect rect = Imgproc.minAreaRect(matOfPoint2f);
-
-        return rect;
+        ContourDescriptors descriptors = describeContours(cannyMat);
+        return descriptors.getMinAreaRect()[descriptors.max()];
     }
 
     /**
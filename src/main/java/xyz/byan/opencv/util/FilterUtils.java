@@ -0,0 +1,247 @@
+package xyz.byan.opencv.util;
+
+import lombok.experimental.UtilityClass;
+import xyz.byan.opencv.domain.PixelBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 14:20.
+ * @description: 基于基本类型数组的滤波引擎
+ * 所有方法都直接操作 PixelBuffer，不逐像素访问 Mat；窗口超出图像的部分直接忽略，只统计图像内的像素
+ */
+@UtilityClass
+public class FilterUtils {
+
+    /**
+     * 可分离卷积时每个分块的列数，分块(条带行数 + 2 * 半径) x TILE_COLS 的中间结果可以留在缓存中
+     */
+    private static final int TILE_COLS = 256;
+
+    /**
+     * 均值滤波(方框滤波)，通过积分图(summed-area table)实现，耗时与窗口大小无关，为 O(W·H·channels)
+     *
+     * @param src    源图像缓冲区
+     * @param radius 窗口半径，窗口大小为 2 * radius + 1
+     * @param dst    结果缓冲区，为空时新建；可以与src相同
+     * @return 结果缓冲区
+     */
+    public static PixelBuffer boxFilter(PixelBuffer src, int radius, PixelBuffer dst) {
+        int rows = src.getRows(), cols = src.getCols(), channels = src.getChannels();
+        if (dst == null) {
+            dst = new PixelBuffer(rows, cols, src.getType());
+        } else if (dst != src) {
+            dst.allocate(rows, cols, src.getType());
+        }
+        if (rows == 0 || cols == 0) {
+            return dst;
+        }
+        int stride = cols + 1;
+        // 积分图，sat[(i + 1) * stride + (j + 1)] 表示 [0, i] x [0, j] 区域内像素之和，按通道复用
+        double[] sat = new double[(rows + 1) * stride];
+        for (int k = 0; k < channels; k++) {
+            for (int i = 0; i < rows; i++) {
+                double rowSum = 0;
+                int from = src.index(i, 0, k);
+                int above = i * stride + 1, loc = above + stride;
+                for (int j = 0; j < cols; j++) {
+                    rowSum += src.getAt(from + j * channels);
+                    sat[loc + j] = sat[above + j] + rowSum;
+                }
+            }
+            for (int i = 0; i < rows; i++) {
+                int fi = Math.max(i - radius, 0), ti = Math.min(i + radius, rows - 1);
+                int top = fi * stride, bottom = (ti + 1) * stride;
+                int to = dst.index(i, 0, k);
+                for (int j = 0; j < cols; j++) {
+                    int fj = Math.max(j - radius, 0), tj = Math.min(j + radius, cols - 1) + 1;
+                    double sum = sat[bottom + tj] - sat[top + tj] - sat[bottom + fj] + sat[top + fj];
+                    int cnt = (ti - fi + 1) * (tj - fj);
+                    dst.setAt(to + j * channels, sum / cnt);
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * 可分离卷积：先做水平方向的一维卷积，再做垂直方向的一维卷积，每个像素的耗时从 O(k²) 降为 O(2k)
+     * 窗口超出图像时只使用图像内的权值并重新归一化，二维权值为 kernelX[l] * kernelY[k] 时与二维卷积的结果一致
+     * 图像按行切分成条带在 pool 中并行处理，每个条带内再按列分块，中间结果只保存在分块大小的数组中
+     *
+     * @param src     源图像缓冲区
+     * @param kernelX 水平方向的一维权值，长度为奇数
+     * @param kernelY 垂直方向的一维权值，长度为奇数
+     * @param dst     结果缓冲区，为空时新建
+     * @param pool    并行执行的线程池，为空时在当前线程中顺序执行
+     * @return 结果缓冲区
+     */
+    public static PixelBuffer separableFilter(PixelBuffer src, double[] kernelX, double[] kernelY, PixelBuffer dst,
+                                              ForkJoinPool pool) {
+        int rows = src.getRows(), cols = src.getCols(), channels = src.getChannels();
+        if (dst == src) {
+            src = src.copy();
+        }
+        if (dst == null) {
+            dst = new PixelBuffer(rows, cols, src.getType());
+        } else {
+            dst.allocate(rows, cols, src.getType());
+        }
+        if (rows == 0 || cols == 0) {
+            return dst;
+        }
+        int rx = kernelX.length >>> 1, ry = kernelY.length >>> 1;
+        double[] prefixX = prefixSum(kernelX);
+        double[] prefixY = prefixSum(kernelY);
+        PixelBuffer in = src, out = dst;
+        ParallelUtils.forEachBand(pool, rows, Math.max(ParallelUtils.DEFAULT_BAND_ROWS, 2 * ry), (fromRow, toRow) -> {
+            int top = Math.max(fromRow - ry, 0), bottom = Math.min(toRow + ry, rows);
+            int tileStride = TILE_COLS * channels;
+            double[] tmp = new double[(bottom - top) * tileStride];
+            double[] acc = new double[tileStride];
+            for (int c0 = 0; c0 < cols; c0 += TILE_COLS) {
+                int c1 = Math.min(c0 + TILE_COLS, cols);
+                int width = (c1 - c0) * channels;
+                // 水平方向：条带及其上下 ry 行
+                for (int i = top; i < bottom; i++) {
+                    int t = (i - top) * width;
+                    for (int j = c0; j < c1; j++) {
+                        int fl = Math.max(rx - j, 0), tl = Math.min(rx + cols - 1 - j, kernelX.length - 1);
+                        double wsum = prefixX[tl + 1] - prefixX[fl];
+                        int from = in.index(i, j - rx);
+                        for (int k = 0; k < channels; k++) {
+                            double sum = 0;
+                            for (int l = fl; l <= tl; l++) {
+                                sum += kernelX[l] * in.getAt(from + l * channels + k);
+                            }
+                            tmp[t++] = sum / wsum;
+                        }
+                    }
+                }
+                // 垂直方向：按行累加，内层循环连续访问中间结果
+                for (int i = fromRow; i < toRow; i++) {
+                    int fl = Math.max(ry - i, 0), tl = Math.min(ry + rows - 1 - i, kernelY.length - 1);
+                    double wsum = prefixY[tl + 1] - prefixY[fl];
+                    Arrays.fill(acc, 0, width, 0);
+                    for (int l = fl; l <= tl; l++) {
+                        double w = kernelY[l];
+                        int t = (i + l - ry - top) * width;
+                        for (int e = 0; e < width; e++) {
+                            acc[e] += w * tmp[t + e];
+                        }
+                    }
+                    int to = out.index(i, c0);
+                    for (int e = 0; e < width; e++) {
+                        out.setAt(to + e, acc[e] / wsum);
+                    }
+                }
+            }
+        });
+        return dst;
+    }
+
+    private static double[] prefixSum(double[] kernel) {
+        double[] prefix = new double[kernel.length + 1];
+        for (int i = 0; i < kernel.length; i++) {
+            prefix[i + 1] = prefix[i] + kernel[i];
+        }
+        return prefix;
+    }
+
+    /**
+     * 最小值滤波(形态学腐蚀)，使用 van Herk/Gil-Werman 算法，每个像素只需常数次比较，与窗口大小无关
+     * 先按行、再按列做一维最小值滤波，窗口超出图像的部分忽略
+     *
+     * @param src    单通道图像数据，按行连续存储
+     * @param rows   行数
+     * @param cols   列数
+     * @param radius 窗口半径，窗口大小为 2 * radius + 1
+     * @param dst    结果数组，为空时新建；可以与src相同
+     * @return 结果数组
+     */
+    public static float[] minFilter(float[] src, int rows, int cols, int radius, float[] dst) {
+        int length = rows * cols;
+        if (dst == null) {
+            dst = new float[length];
+        }
+        if (length == 0) {
+            return dst;
+        }
+        int k = 2 * radius + 1;
+        // 水平方向，结果先写入dst
+        int padded = paddedLength(cols, radius, k);
+        float[] g = new float[padded], h = new float[padded];
+        float[] line = new float[cols];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(src, i * cols, line, 0, cols);
+            minFilter1d(line, cols, radius, k, g, h);
+            for (int j = 0; j < cols; j++) {
+                dst[i * cols + j] = Math.min(h[j], g[j + 2 * radius]);
+            }
+        }
+        // 垂直方向，按列分块后把每一行当作一个向量处理，内层循环连续访问
+        padded = paddedLength(rows, radius, k);
+        int stripCols = Math.min(TILE_COLS, cols);
+        g = new float[padded * stripCols];
+        h = new float[padded * stripCols];
+        float[] tmp = new float[rows * stripCols];
+        for (int c0 = 0; c0 < cols; c0 += TILE_COLS) {
+            int width = Math.min(c0 + TILE_COLS, cols) - c0;
+            for (int i = 0; i < rows; i++) {
+                System.arraycopy(dst, i * cols + c0, tmp, i * width, width);
+            }
+            for (int b = 0; b < padded; b += k) {
+                for (int p = b; p < b + k; p++) {
+                    int i = p - radius;
+                    for (int c = 0; c < width; c++) {
+                        float v = i >= 0 && i < rows ? tmp[i * width + c] : Float.POSITIVE_INFINITY;
+                        g[p * width + c] = p == b ? v : Math.min(g[(p - 1) * width + c], v);
+                    }
+                }
+                for (int p = b + k - 1; p >= b; p--) {
+                    int i = p - radius;
+                    for (int c = 0; c < width; c++) {
+                        float v = i >= 0 && i < rows ? tmp[i * width + c] : Float.POSITIVE_INFINITY;
+                        h[p * width + c] = p == b + k - 1 ? v : Math.min(h[(p + 1) * width + c], v);
+                    }
+                }
+            }
+            for (int i = 0; i < rows; i++) {
+                int lo = i * width, hi = (i + 2 * radius) * width;
+                for (int c = 0; c < width; c++) {
+                    dst[i * cols + c0 + c] = Math.min(h[lo + c], g[hi + c]);
+                }
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * 一维 van Herk/Gil-Werman：数组两端各补 radius 个正无穷，按窗口大小k分块，
+     * g为块内前缀最小值，h为块内后缀最小值，以补齐后下标x开始的窗口最小值为 min(h[x], g[x + k - 1])
+     */
+    private static void minFilter1d(float[] line, int n, int radius, int k, float[] g, float[] h) {
+        int padded = g.length;
+        for (int b = 0; b < padded; b += k) {
+            for (int p = b; p < b + k; p++) {
+                int i = p - radius;
+                float v = i >= 0 && i < n ? line[i] : Float.POSITIVE_INFINITY;
+                g[p] = p == b ? v : Math.min(g[p - 1], v);
+            }
+            for (int p = b + k - 1; p >= b; p--) {
+                int i = p - radius;
+                float v = i >= 0 && i < n ? line[i] : Float.POSITIVE_INFINITY;
+                h[p] = p == b + k - 1 ? v : Math.min(h[p + 1], v);
+            }
+        }
+    }
+
+    /**
+     * 两端补齐 radius 后再向上取整到k的倍数
+     */
+    private static int paddedLength(int n, int radius, int k) {
+        return (n + 2 * radius + k - 1) / k * k;
+    }
+}
@@ -6,6 +6,11 @@ import org.opencv.core.Point;
 import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.PixelBuffer;
+import xyz.byan.opencv.domain.RawFrame;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * @author: bai
@@ -98,6 +103,39 @@ public class GeneralUtils {
         return Imgcodecs.imwrite(filePath, src);
     }
 
+    /**
+     * 作用：按原始帧格式(RawFrame)保存图像，不做编码，用于多步处理之间的中间结果
+     *
+     * @param src
+     *            Mat矩阵图像
+     * @param filePath
+     *            要保存图像的路径及名字
+     * @return 保存成功时为true，写入文件出错时抛出异常
+     */
+    public static boolean saveRawImg(Mat src, String filePath) {
+        try {
+            RawFrame.write(src, new File(filePath));
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException("保存原始帧失败：" + filePath, e);
+        }
+    }
+
+    /**
+     * 作用：读取 saveRawImg 保存的原始帧，返回mat矩阵，不做解码
+     *
+     * @param imgPath
+     *            图像路径
+     * @return
+     */
+    public static Mat rawMatFactory(String imgPath) {
+        try {
+            return RawFrame.read(new File(imgPath));
+        } catch (IOException e) {
+            throw new RuntimeException("读取原始帧失败：" + imgPath, e);
+        }
+    }
+
 
     /**
      * 确保白底黑字或者黑底白字
@@ -107,29 +145,27 @@ public class GeneralUtils {
      */
     public static Mat turnPixel(Mat src , boolean b){
         if(src != null){
-            int width = GeneralUtils.getImgWidth(src);
-            int height = GeneralUtils.getImgHeight(src);
+            PixelBuffer buffer = PixelBuffer.of(src);
+            int length = buffer.length();
+            int channels = buffer.getChannels();
             int value;
             int black_num = 0;
             int white_num = 0;
-            int i, j;
-            for(i = 0 ; i < width ; i++){
-                for(j = 0 ; j < height ; j++){
-                    value = GeneralUtils.getPixel(src , j , i);
-                    if(value == GeneralUtils.getWHITE()){
-                        white_num++;
-                    }else if(value == GeneralUtils.getBLACK()){
-                        black_num++;
-                    }
+            for(int i = 0 ; i < length ; i += channels){
+                value = buffer.getInt(i);
+                if(value == GeneralUtils.getWHITE()){
+                    white_num++;
+                }else if(value == GeneralUtils.getBLACK()){
+                    black_num++;
                 }
             }
 
             if(b && black_num > white_num){
                 //反转
-                src = turnPixel(src);
+                src = turnPixel(src, buffer);
             }else if(!b && white_num > black_num){
                 //反转
-                src = turnPixel(src);
+                src = turnPixel(src, buffer);
             }
         }
         return src;
@@ -146,18 +182,31 @@ public class GeneralUtils {
         if (src.channels() != 1) {
             throw new RuntimeException("不是单通道图，需要先灰度话！！！");
         }
-        int j, i, value;
-        int width = getImgWidth(src), height = getImgHeight(src);
-        for (j = 0; j < height; j++) {
-            for (i = 0; i < width; i++) {
-                value = getPixel(src, j, i);
-                if (value == 0) {
-                    setPixel(src, j, i, WHITE);
-                } else {
-                    setPixel(src, j, i, BLACK);
-                }
+        return turnPixel(src, PixelBuffer.of(src));
+    }
+
+    /**
+     * 作用：翻转图像像素，buffer中为src当前的像素
+     *
+     * @param src
+     *            Mat矩阵图像
+     * @param buffer
+     *            src的像素缓冲区，翻转后会一并更新
+     * @return
+     */
+    public static Mat turnPixel(Mat src, PixelBuffer buffer) {
+        if (buffer.getChannels() != 1) {
+            throw new RuntimeException("不是单通道图，需要先灰度话！！！");
+        }
+        int length = buffer.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.getInt(i) == 0) {
+                buffer.setAt(i, WHITE);
+            } else {
+                buffer.setAt(i, BLACK);
             }
         }
+        buffer.write(src);
         return src;
     }
 
@@ -183,6 +232,7 @@ public class GeneralUtils {
          */
         Imgproc.dilate(src, outImage, structImage, new Point(-1, -1), 2);
         src = outImage;
+        structImage.release();
 
         return src;
     }
@@ -194,9 +244,20 @@ public class GeneralUtils {
      * @return
      */
     public static Mat canny(Mat src) {
-        Mat mat = src.clone();
-        Imgproc.Canny(src, mat, 60, 200);
-        return mat;
+        // Canny 会重新分配输出，不需要先复制一份原图
+        return cannyInto(src, new Mat());
+    }
+
+    /**
+     * canny算法，边缘检测，结果写入调用方提供的dst，dst尺寸、类型一致时直接复用其内存
+     *
+     * @param src
+     * @param dst
+     * @return dst
+     */
+    public static Mat cannyInto(Mat src, Mat dst) {
+        Imgproc.Canny(src, dst, 60, 200);
+        return dst;
     }
 
 
@@ -4,9 +4,11 @@ package xyz.byan.opencv.util;
 import lombok.experimental.UtilityClass;
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.PixelBuffer;
 
-import java.security.SecureRandom;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author: bai
@@ -36,87 +38,133 @@ public class GrayUtils {
      * 细粒度灰度化，只降低噪声，不对有效数据做任何的加强的处理
      * 根据灰度化后的图像每一列的像素值的平均值(默认)或者其他表达式值作为阀值，把大于阀值的像素都改为255
      * 可以在一定程度上降低噪声，而不对有效数据造成任何影响
+     * 每一列中所有大于阀值的像素都改为255，结果是确定的，各列在公共线程池中并行；需要随机抽样时使用带 Random 的重载
      * @param src
      * @return
      */
     public static Mat grayColByMidle(Mat src){
+        return grayColByMidle(src , ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 均值灰度化减噪，确定模式：每一列中所有大于阀值的像素都改为255
+     * @param src
+     * @param pool 各列并行使用的线程池，为空时在当前线程中顺序执行
+     * @return
+     */
+    public static Mat grayColByMidle(Mat src , ForkJoinPool pool){
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        List<List<Double>> data = MathUtils.MatPixelToList(src);
-        return grayColByMidle(src , data);
+        return grayColByMidle(src , MathUtils.lines(PixelBuffer.of(src), true) , pool);
     }
 
     /**
-     * 根据灰度化后的图像每一列的像素值的平均值作为阀值，把大于阀值的像素都改为255
-     * @param data List<Double>中存储图像灰度化后的每一列的像素值
+     * 均值灰度化减噪，抽样模式：每一列随机抽取 rows/2 次，最多修改 3/4 的像素，工作量有上限
+     * @param src
+     * @param random 随机抽样使用的随机数生成器，指定种子时结果可以复现，不能为空
      * @return
      */
-    public static Mat grayColByMidle(Mat src , List<List<Double>> data){
+    public static Mat grayColByMidle(Mat src , Random random){
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        for(int j = 0 ; j < data.size() ; j++){
-            List<Double> list = data.get(j);
-
-            int avg = (int)((MathUtils.getSumInList(list) / list.size()) * 0.95);
-
-            //随机的更新像素值
-            int count = 3 * list.size() / 4;
-            int time = 0;
-            while(count > 0){
+        return grayColByMidle(src , MathUtils.lines(PixelBuffer.of(src), true) , random);
+    }
 
-                int index = new SecureRandom().nextInt(list.size());
+    /**
+     * 根据灰度化后的图像每一列的像素值的平均值作为阀值，把大于阀值的像素都改为255
+     * @param data List<Double>中存储图像灰度化后的每一列的像素值
+     * @return
+     */
+    public static Mat grayColByMidle(Mat src , List<List<Double>> data){
+        return grayColByMidle(src , toColumns(data) , ForkJoinPool.commonPool());
+    }
 
-                if(list.get(index) >= avg){
-                    src.put(index , j , 255);
-                    count--;
-                }
+    /**
+     * 根据灰度化后的图像每一列的像素值的平均值作为阀值，把大于阀值的像素都改为255(确定模式)
+     * @param data 每个数组是图像灰度化后的一列像素值
+     * @param pool 各列并行使用的线程池，为空时在当前线程中顺序执行
+     * @return
+     */
+    public static Mat grayColByMidle(Mat src , double[][] data , ForkJoinPool pool){
+        return grayColAll(src , data , midleThresholds(data) , pool);
+    }
 
-                if(count == count){
-                    time++;
-                }
-                //避免程序进入死循环
-                if(time == list.size() / 2){
-                    break;
-                }
-            }
+    /**
+     * 根据灰度化后的图像每一列的像素值的平均值作为阀值，随机抽样把大于阀值的像素改为255(抽样模式)
+     * @param data 每个数组是图像灰度化后的一列像素值
+     * @param random 随机抽样使用的随机数生成器，不能为空
+     * @return
+     */
+    public static Mat grayColByMidle(Mat src , double[][] data , Random random){
+        return grayColSampled(src , data , midleThresholds(data) , random);
+    }
 
+    private static double[] midleThresholds(double[][] data){
+        double[] thresholds = new double[data.length];
+        for(int j = 0 ; j < data.length ; j++){
+            double[] col = data[j];
+            thresholds[j] = (int)((MathUtils.sum(col) / col.length) * 0.95);
         }
-        return src;
+        return thresholds;
     }
 
     /**
      * k值灰度化减噪
      * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，把大于阀值的像素都改为255
-     * 默认选取第1/3大的值作为阀值
+     * 默认选取第1/3大的值作为阀值，结果是确定的
      * @param src
      * @return
      */
     public static Mat grayColByKLargest(Mat src){
-        if(src.channels() != 1){
-            src = grayNative(src);
-        }
-        List<List<Double>> data = MathUtils.MatPixelToList(src);
-        return grayColByKLargest(src , 3 , data);
+        return grayColByKLargest(src , 3);
     }
 
 
     /**
      * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，把大于阀值的像素都改为255
+     * 每一列中所有大于阀值的像素都改为255，结果是确定的，各列在公共线程池中并行；需要随机抽样时使用带 Random 的重载
      * @param src
      * @param k 分母
      * @return
      */
     public static Mat grayColByKLargest(Mat src , int k){
+        return grayColByKLargest(src , k , ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，确定模式：每一列中所有大于阀值的像素都改为255
+     * @param src
+     * @param k 分母
+     * @param pool 各列并行使用的线程池，为空时在当前线程中顺序执行
+     * @return
+     */
+    public static Mat grayColByKLargest(Mat src , int k , ForkJoinPool pool){
+        if(k == 0){
+            throw  new RuntimeException("k不能为0");
+        }
+        if(src.channels() != 1){
+            src = grayNative(src);
+        }
+        return grayColByKLargest(src , k , MathUtils.lines(PixelBuffer.of(src), true) , pool);
+    }
+
+    /**
+     * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，抽样模式：每一列随机抽取 rows/2 次，最多修改 3/4 的像素
+     * @param src
+     * @param k 分母
+     * @param random 随机抽样使用的随机数生成器，指定种子时结果可以复现，不能为空
+     * @return
+     */
+    public static Mat grayColByKLargest(Mat src , int k , Random random){
         if(k == 0){
             throw  new RuntimeException("k不能为0");
         }
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        List<List<Double>> data = MathUtils.MatPixelToList(src);
-        return grayColByKLargest(src , k , data);
+        return grayColByKLargest(src , k , MathUtils.lines(PixelBuffer.of(src), true) , random);
     }
 
     /**
@@ -127,45 +175,112 @@ public class GrayUtils {
      * @return
      */
     public static Mat grayColByKLargest(Mat src , int k , List<List<Double>> data){
+        return grayColByKLargest(src , k , toColumns(data) , ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，把大于阀值的像素都改为255(确定模式)
+     * @param src
+     * @param k
+     * @param data 每个数组是图像灰度化后的一列像素值
+     * @param pool 各列并行使用的线程池，为空时在当前线程中顺序执行
+     * @return
+     */
+    public static Mat grayColByKLargest(Mat src , int k , double[][] data , ForkJoinPool pool){
+        return grayColAll(src , data , kLargestThresholds(k , data) , pool);
+    }
+
+    /**
+     * 根据灰度化后的图像每一列的像素值的第k大值作为阀值，随机抽样把大于阀值的像素改为255(抽样模式)
+     * @param src
+     * @param k
+     * @param data 每个数组是图像灰度化后的一列像素值
+     * @param random 随机抽样使用的随机数生成器，不能为空
+     * @return
+     */
+    public static Mat grayColByKLargest(Mat src , int k , double[][] data , Random random){
+        return grayColSampled(src , data , kLargestThresholds(k , data) , random);
+    }
+
+    private static double[] kLargestThresholds(int k , double[][] data){
         if(k == 0){
             throw  new RuntimeException("k不能为0");
         }
+        double[] thresholds = new double[data.length];
+        for(int j = 0 ; j < data.length ; j++){
+            double[] col = data[j];
+            thresholds[j] = MathUtils.findKthLargest(col, col.length / k);
+        }
+        return thresholds;
+    }
+
+    /**
+     * 把每一列中所有大于等于该列阀值的像素改为255，各列在 pool 中并行
+     * @param src
+     * @param data 每个数组是一列的像素值
+     * @param thresholds 每一列的阀值
+     * @param pool 为空时在当前线程中顺序执行
+     * @return
+     */
+    private static Mat grayColAll(Mat src , double[][] data , double[] thresholds , ForkJoinPool pool){
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        for(int j = 0 ; j < data.size() ; j++){
-            List<Double> list = data.get(j);
-            Object[] doubles = list.toArray();
-            Double[] doubles1 = new Double[doubles.length];
-            for(int i = 0 ; i < doubles.length ; i++){
-                doubles1[i] = (Double) doubles[i];
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ParallelUtils.forEachBand(pool, data.length, ParallelUtils.DEFAULT_BAND_ROWS, (from, to) -> {
+            for(int j = from ; j < to ; j++){
+                double[] col = data[j];
+                for(int i = 0 ; i < col.length ; i++){
+                    if(col[i] >= thresholds[j]){
+                        buffer.set(i , j , 255);
+                    }
+                }
             }
-            double d = MathUtils.findKthLargest(doubles1, list.size() / k);
-
-            //随机的更新像素值
-            int count = 3 * doubles.length / 4;
-            int time = 0;
-            while(count > 0){
-
-                int index = new SecureRandom().nextInt(list.size());
+        });
+        return buffer.write(src);
+    }
 
-                if(list.get(index) >= d){
-                    src.put(index , j , 255);
+    /**
+     * 每一列随机抽取 rows/2 次，把大于等于该列阀值的像素改为255，最多修改 3/4 的像素，工作量有上限
+     * @param src
+     * @param data 每个数组是一列的像素值
+     * @param thresholds 每一列的阀值
+     * @param random
+     * @return
+     */
+    private static Mat grayColSampled(Mat src , double[][] data , double[] thresholds , Random random){
+        if(random == null){
+            throw new RuntimeException("抽样模式必须指定随机数生成器，不抽样时使用带 ForkJoinPool 的重载");
+        }
+        if(src.channels() != 1){
+            src = grayNative(src);
+        }
+        PixelBuffer buffer = PixelBuffer.of(src);
+        for(int j = 0 ; j < data.length ; j++){
+            double[] col = data[j];
+            //随机的更新像素值，最多抽取 rows/2 次，避免程序进入死循环
+            int count = 3 * col.length / 4;
+            for(int time = 0 ; count > 0 && time < col.length / 2 ; time++){
+                int index = random.nextInt(col.length);
+                if(col[index] >= thresholds[j]){
+                    buffer.set(index , j , 255);
                     count--;
                 }
-
-                if(count == count){
-                    time++;
-                }
-                //避免程序进入死循环
-                if(time == list.size() / 2){
-                    break;
-                }
-
             }
+        }
+        return buffer.write(src);
+    }
 
+    private static double[][] toColumns(List<List<Double>> data){
+        double[][] ret = new double[data.size()][];
+        for(int j = 0 ; j < ret.length ; j++){
+            List<Double> list = data.get(j);
+            ret[j] = new double[list.size()];
+            for(int i = 0 ; i < ret[j].length ; i++){
+                ret[j][i] = list.get(i);
+            }
         }
-        return src;
+        return ret;
     }
 
 
@@ -177,42 +292,7 @@ public class GrayUtils {
      * @return
      */
     public static int getAdapThreshold(Mat src) {
-        int threshold = 0, threshold_new = 127;
-        int nWhite_count, nBlack_count;
-        int nWhite_sum, nBlack_sum;
-        int value, i, j;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-
-        if(width == 0 || height == 0){
-            System.out.println("图像加载异常");
-            return -1;
-        }
-
-        while (threshold != threshold_new) {
-            nWhite_sum = nBlack_sum = 0;
-            nWhite_count = nBlack_count = 0;
-            for (j = 0; j < height; j++) {
-                for (i = 0; i < width; i++) {
-                    value = GeneralUtils.getPixel(src, j, i);
-                    if (value > threshold_new) {
-                        nWhite_count++;
-                        nWhite_sum += value;
-                    } else {
-                        nBlack_count++;
-                        nBlack_sum += value;
-                    }
-                }
-            }
-            threshold = threshold_new;
-            if(nWhite_count == 0 || nBlack_count == 0){
-                threshold_new = (nWhite_sum + nBlack_sum) / (nWhite_count + nBlack_count);
-            }else{
-                threshold_new = (nWhite_sum / nWhite_count + nBlack_sum / nBlack_count) / 2;
-            }
-
-        }
-
-        return threshold;
+        return ThresholdUtils.iterative(src);
     }
 
     /**
@@ -224,20 +304,9 @@ public class GrayUtils {
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        int width = GeneralUtils.getImgWidth(src);
-        int height = GeneralUtils.getImgHeight(src);
-        int value;
-        for(int i = 0 ; i < width ; i++){
-            Mat partMat = src.col(i);
-            int thresold = getAdapThreshold(partMat);
-            for(int j = 0 ; j < height ; j++){
-                value = GeneralUtils.getPixel(src , j , i);
-                if(value > thresold){
-                    GeneralUtils.setPixel(src , j , i , GeneralUtils.getWHITE());
-                }
-            }
-        }
-        return src;
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ThresholdUtils.columnThreshold(buffer, 0, false, ForkJoinPool.commonPool());
+        return buffer.write(src);
     }
 
 
@@ -250,21 +319,16 @@ public class GrayUtils {
         if(src.channels() != 1){
             src = grayNative(src);
         }
-        int i, j;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-        int value;
+        PixelBuffer buffer = PixelBuffer.of(src);
+        int length = buffer.length();
 
-        int threshold = getAdapThreshold(src);
-        for (j = 0; j < height; j++) {
-            for (i = 0; i < width; i++) {
-                value = GeneralUtils.getPixel(src, j, i);
-                if (value > threshold) {
-                    GeneralUtils.setPixel(src, j, i, GeneralUtils.getWHITE());
-
-                }
+        int threshold = ThresholdUtils.iterative(buffer);
+        for (int i = 0; i < length; i++) {
+            if (buffer.getInt(i) > threshold) {
+                buffer.setAt(i, GeneralUtils.getWHITE());
             }
         }
 
-        return src;
+        return buffer.write(src);
     }
 }
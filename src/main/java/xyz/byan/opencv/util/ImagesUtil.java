@@ -8,14 +8,30 @@ import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.objdetect.CascadeClassifier;
 import org.springframework.util.ResourceUtils;
+import xyz.byan.opencv.domain.MatScope;
+import xyz.byan.opencv.domain.PixelBuffer;
+import xyz.byan.opencv.domain.ToneCurve;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.DoubleAccumulator;
 
 import static org.opencv.core.Core.*;
 import static org.opencv.core.CvType.CV_16S;
@@ -54,6 +70,15 @@ public class ImagesUtil {
         return cellSize % 2 == 0 ? cellSize + 1 : cellSize;
     }
 
+    /**
+     * 方框滤波(averageFiltering、gaussianFiltering、disFog)的窗口半径，分块处理时作为相邻分块重叠的宽度
+     * @param cellSize 滤波方框的大小
+     * @return
+     */
+    public static int filterRadius(int cellSize) {
+        return standardizeCellSize(cellSize) >>> 1;
+    }
+
 
     /**
      * 预览指定的图像
@@ -103,35 +128,165 @@ public class ImagesUtil {
 
     /**
      * 将 opencv 中 Mat 对象转为 Java 中的 BufferedImage 对象。
+     * 支持8位的1、3、4通道(TYPE_BYTE_GRAY、TYPE_3BYTE_BGR、TYPE_4BYTE_ABGR)和16位的1、3、4通道，其他类型返回null
      * @param mat
      */
     public static BufferedImage mat2BufferedImage(Mat mat) {
+        return mat2BufferedImage(mat, null);
+    }
+
+    /**
+     * 将 opencv 中 Mat 对象转为 Java 中的 BufferedImage 对象，像素数据从本地内存直接复制到 BufferedImage 的数组中。
+     * 直接写入 DataBufferByte 时按内存中的字节顺序存储，3BYTE_BGR 与 Mat 的通道顺序相同，不需要交换；
+     * (通过 WritableRaster.setDataElements 写入时按 R、G、B 波段顺序，需要先把 BGR 交换为 RGB)
+     * 4通道需要把 BGRA 调整为 ABGR；
+     * 16位3、4通道没有对应的标准类型，使用按 BGR(A) 顺序存储的自定义 BufferedImage
+     * @param mat
+     * @param reuse 尺寸、类型一致时直接写入并返回它，用于逐帧转换时复用，可以为空
+     */
+    public static BufferedImage mat2BufferedImage(Mat mat, BufferedImage reuse) {
         int cols = mat.cols();
         int rows = mat.rows();
-        int elemSize = (int) mat.elemSize();
-        byte[] data = new byte[cols * rows * elemSize];
-        int type;
-        mat.get(0, 0, data);
-        switch (mat.channels()) {
+        int channels = mat.channels();
+        int[] offsets = bandOffsets(mat.depth(), channels);
+        if (offsets == null) {
+            return null;
+        }
+        BufferedImage image = reuse;
+        if (image == null || image.getWidth() != cols || image.getHeight() != rows || !isPlain(image, mat.depth(), offsets)) {
+            image = createImage(cols, rows, mat.depth(), channels);
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (mat.depth() == CvType.CV_8U) {
+            byte[] data = ((DataBufferByte) buffer).getData();
+            mat.get(0, 0, data);
+            if (channels == 4) {
+                // BGRA -> ABGR
+                for (int i = 0; i < data.length; i += 4) {
+                    byte a = data[i + 3];
+                    data[i + 3] = data[i + 2];
+                    data[i + 2] = data[i + 1];
+                    data[i + 1] = data[i];
+                    data[i] = a;
+                }
+            }
+        } else {
+            mat.get(0, 0, ((DataBufferUShort) buffer).getData());
+        }
+        return image;
+    }
+
+    /**
+     * 将 Java 中的 BufferedImage 对象转为 opencv 中的 Mat 对象
+     * @param image
+     * @return
+     */
+    public static Mat bufferedImage2Mat(BufferedImage image) {
+        return bufferedImage2Mat(image, new Mat());
+    }
+
+    /**
+     * 将 Java 中的 BufferedImage 对象转为 opencv 中的 Mat 对象，是 mat2BufferedImage 的逆过程。
+     * mat2BufferedImage 支持的类型直接从数组复制到本地内存，其他类型先画到 TYPE_3BYTE_BGR(有透明通道时 TYPE_4BYTE_ABGR)上再转换
+     * @param image
+     * @param dst 结果矩阵，尺寸、类型不一致时重新分配
+     * @return dst
+     */
+    public static Mat bufferedImage2Mat(BufferedImage image, Mat dst) {
+        int cols = image.getWidth();
+        int rows = image.getHeight();
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        int channels = image.getRaster().getNumBands();
+        int depth = buffer.getDataType() == DataBuffer.TYPE_USHORT ? CvType.CV_16U : CvType.CV_8U;
+        int[] offsets = bandOffsets(depth, channels);
+        if (offsets == null || !isPlain(image, depth, offsets)) {
+            int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR;
+            BufferedImage converted = new BufferedImage(cols, rows, type);
+            Graphics2D g = converted.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            return bufferedImage2Mat(converted, dst);
+        }
+        dst.create(rows, cols, CvType.makeType(depth, channels));
+        if (depth == CvType.CV_8U) {
+            byte[] data = ((DataBufferByte) buffer).getData();
+            if (channels == 4) {
+                // ABGR -> BGRA，不修改原图的数组
+                data = data.clone();
+                for (int i = 0; i < data.length; i += 4) {
+                    byte a = data[i];
+                    data[i] = data[i + 1];
+                    data[i + 1] = data[i + 2];
+                    data[i + 2] = data[i + 3];
+                    data[i + 3] = a;
+                }
+            }
+            dst.put(0, 0, data);
+        } else {
+            dst.put(0, 0, ((DataBufferUShort) buffer).getData());
+        }
+        return dst;
+    }
+
+    /**
+     * 与 Mat 对应的 BufferedImage 中每个颜色分量(按 R、G、B、A 的顺序)在像素中的偏移
+     * @return 不支持的类型返回null
+     */
+    private static int[] bandOffsets(int depth, int channels) {
+        if (depth != CvType.CV_8U && depth != CvType.CV_16U) {
+            return null;
+        }
+        switch (channels) {
             case 1:
-                type = BufferedImage.TYPE_BYTE_GRAY;
-                break;
+                return new int[]{0};
             case 3:
-                type = BufferedImage.TYPE_3BYTE_BGR;
-                // bgr to rgb
-                byte b;
-                for (int i = 0; i < data.length; i = i + 3) {
-                    b = data[i];
-                    data[i] = data[i + 2];
-                    data[i + 2] = b;
-                }
-                break;
+                return new int[]{2, 1, 0};
+            case 4:
+                return depth == CvType.CV_8U ? new int[]{3, 2, 1, 0} : new int[]{2, 1, 0, 3};
             default:
                 return null;
         }
-        BufferedImage image = new BufferedImage(cols, rows, type);
-        image.getRaster().setDataElements(0, 0, cols, rows, data);
-        return image;
+    }
+
+    private static BufferedImage createImage(int cols, int rows, int depth, int channels) {
+        if (depth == CvType.CV_8U) {
+            return new BufferedImage(cols, rows, channels == 1 ? BufferedImage.TYPE_BYTE_GRAY
+                    : channels == 3 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        if (channels == 1) {
+            return new BufferedImage(cols, rows, BufferedImage.TYPE_USHORT_GRAY);
+        }
+        boolean alpha = channels == 4;
+        ComponentColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), alpha, false,
+                alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_USHORT, cols, rows, cols * channels, channels,
+                bandOffsets(depth, channels), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * BufferedImage 的数据是否与对应类型的 Mat 内存布局完全一致：单个数组、从0开始、按行连续、分量偏移相同
+     */
+    private static boolean isPlain(BufferedImage image, int depth, int[] offsets) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        int transferType = depth == CvType.CV_8U ? DataBuffer.TYPE_BYTE : DataBuffer.TYPE_USHORT;
+        if (buffer.getDataType() != transferType || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+            return false;
+        }
+        ColorModel colorModel = image.getColorModel();
+        int colorSpace = offsets.length == 1 ? ColorSpace.TYPE_GRAY : ColorSpace.TYPE_RGB;
+        if (!(colorModel instanceof ComponentColorModel) || colorModel.getColorSpace().getType() != colorSpace
+                || colorModel.hasAlpha() != (offsets.length == 4) || colorModel.isAlphaPremultiplied()) {
+            return false;
+        }
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        return model.getPixelStride() == offsets.length
+                && model.getScanlineStride() == image.getWidth() * offsets.length
+                && buffer.getSize() == image.getWidth() * image.getHeight() * offsets.length
+                && Arrays.equals(model.getBandOffsets(), offsets);
     }
 
     /**
@@ -141,10 +296,21 @@ public class ImagesUtil {
      * @Return: 调节完成的图像矩阵
      */
     public static Mat shiftSaturability(Mat mat, int val) {
+        return shiftSaturability(mat, val, null);
+    }
+
+    /**
+     * @Description: 图像饱和度调节，8位图像通过 ToneCurve 查找表调节S通道，其他深度按行分带并行
+     * @Param: Mat 传入的图像矩阵
+     * @Param: val 调节系数
+     * @Param: pool 非8位图像按行分带并行使用的线程池，为空时顺序执行，可通过 ParallelUtils.pool 获取指定并行度的线程池；
+     *         8位图像走 Core.LUT，由 OpenCV 自己的线程池并行(cv::setNumThreads)，不使用该参数
+     * @Return: 调节完成的图像矩阵
+     */
+    public static Mat shiftSaturability(Mat mat, int val, ForkJoinPool pool) {
         if (val == BASE_VAL) {
             return mat;
         }
-        Mat hsv = new Mat();
         double f;
         boolean flag = false;
         if (val > BASE_VAL) {
@@ -154,22 +320,34 @@ public class ImagesUtil {
             f = 1.0 * val / BASE_VAL;
         }
 
-        Imgproc.cvtColor(mat, hsv, Imgproc.COLOR_BGR2HSV);
+        try (MatScope scope = new MatScope()) {
+            Mat hsv = scope.mat();
+            Imgproc.cvtColor(mat, hsv, Imgproc.COLOR_BGR2HSV);
+            Mat ret = new Mat();
+            if (CvType.depth(hsv.type()) == CvType.CV_8U) {
+                ToneCurve.identity(hsv.channels()).saturation(val).apply(hsv, hsv);
+                Imgproc.cvtColor(hsv, ret, Imgproc.COLOR_HSV2BGR);
+                return ret;
+            }
 
-        for (int i = 0; i < hsv.height(); i++) {
-            for (int j = 0; j < hsv.width(); j++) {
-                double[] vals = hsv.get(i, j);
-                if (flag) {
-                    vals[1] = vals[1] + (MAX_VAL - vals[1]) * f;
-                } else {
-                    vals[1] = vals[1] * f;
+            PixelBuffer buffer = PixelBuffer.of(hsv);
+            int channels = buffer.getChannels();
+            boolean increase = flag;
+            ParallelUtils.forEachBand(pool, buffer.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+                int end = buffer.index(toRow, 0);
+                for (int i = buffer.index(fromRow, 0) + 1; i < end; i += channels) {
+                    double s = buffer.getAt(i);
+                    if (increase) {
+                        buffer.setAt(i, s + (MAX_VAL - s) * f);
+                    } else {
+                        buffer.setAt(i, s * f);
+                    }
                 }
-                hsv.put(i, j, vals);
-            }
+            });
+            buffer.write(hsv);
+            Imgproc.cvtColor(hsv, ret, Imgproc.COLOR_HSV2BGR);
+            return ret;
         }
-        Mat ret = new Mat();
-        Imgproc.cvtColor(hsv, ret, Imgproc.COLOR_HSV2BGR);
-        return ret;
     }
 
     /**
@@ -179,21 +357,39 @@ public class ImagesUtil {
      * @Return: 调节完成的图像矩阵
      */
     public static Mat shiftContrast(Mat img, int val) {
+        return shiftContrast(img, val, null);
+    }
+
+    /**
+     * @Description: 图像的对比度调节，8位图像编译成 ToneCurve 查找表一次完成，其他深度按行分带并行
+     * @Param: Mat 传入的图像矩阵
+     * @Param: val 调节系数
+     * @Param: pool 非8位图像按行分带并行使用的线程池，为空时顺序执行，可通过 ParallelUtils.pool 获取指定并行度的线程池；
+     *         8位图像走 Core.LUT，由 OpenCV 自己的线程池并行(cv::setNumThreads)，不使用该参数
+     * @Return: 调节完成的图像矩阵
+     */
+    public static Mat shiftContrast(Mat img, int val, ForkJoinPool pool) {
         if (val == BASE_VAL) {
             return img;
         }
-        Mat ret = new Mat(img.height(), img.width(), img.type());
-        double maxx = -1, minn = 300.0;
-        for (int i = 0; i < img.height(); i++) {
-            for (int j = 0; j < img.width(); j++) {
-                double[] vals = img.get(i, j);
-                for (int k = 0; k < vals.length; k++) {
-                    maxx = maxx > vals[k] ? maxx : vals[k];
-                    minn = minn < vals[k] ? minn : vals[k];
-                }
-            }
+        if (CvType.depth(img.type()) == CvType.CV_8U) {
+            return ToneCurve.of(img).contrast(val).apply(img);
         }
-        double midd = (maxx + minn) / 2;
+        PixelBuffer buffer = PixelBuffer.of(img);
+        DoubleAccumulator maxx = new DoubleAccumulator(Math::max, -1);
+        DoubleAccumulator minn = new DoubleAccumulator(Math::min, 300.0);
+        ParallelUtils.forEachBand(pool, buffer.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+            double max = -1, min = 300.0;
+            int end = buffer.index(toRow, 0);
+            for (int i = buffer.index(fromRow, 0); i < end; i++) {
+                double v = buffer.getAt(i);
+                max = max > v ? max : v;
+                min = min < v ? min : v;
+            }
+            maxx.accumulate(max);
+            minn.accumulate(min);
+        });
+        double midd = (maxx.get() + minn.get()) / 2;
         double a;
         if(val>BASE_VAL){
             if(val==MAX_VAL) {
@@ -204,16 +400,13 @@ public class ImagesUtil {
             a = (1.0 * val) / BASE_VAL;
         }
         double b = midd * (1 - a);
-        for (int i = 0; i < img.height(); i++) {
-            for (int j = 0; j < img.width(); j++) {
-                double[] vals = img.get(i, j);
-                for (int k = 0; k < vals.length; k++) {
-                    vals[k] = a * vals[k] + b;
-                }
-                ret.put(i, j, vals);
+        ParallelUtils.forEachBand(pool, buffer.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+            int end = buffer.index(toRow, 0);
+            for (int i = buffer.index(fromRow, 0); i < end; i++) {
+                buffer.setAt(i, a * buffer.getAt(i) + b);
             }
-        }
-        return ret;
+        });
+        return buffer.toMat();
     }
 
     /**
@@ -223,12 +416,53 @@ public class ImagesUtil {
      * @Return: 调节完成的图像矩阵
      */
     public static Mat shiftBrightness(Mat img, int val) {
+        return shiftBrightness(img, val, null);
+    }
+
+    /**
+     * @Description: 图像亮度调节，8位图像编译成 ToneCurve 查找表一次完成，其他深度按行分带并行
+     * @Param: Mat 传入的图像矩阵
+     * @Param: val 调节系数
+     * @Param: pool 非8位图像按行分带并行使用的线程池，为空时顺序执行，可通过 ParallelUtils.pool 获取指定并行度的线程池；
+     *         8位图像走 Core.LUT，由 OpenCV 自己的线程池并行(cv::setNumThreads)，不使用该参数
+     * @Return: 调节完成的图像矩阵
+     */
+    public static Mat shiftBrightness(Mat img, int val, ForkJoinPool pool) {
         if (val == BASE_VAL) {
             return img;
         }
-        Mat ret = new Mat(img.height(), img.width(), img.type());
-        int hei = img.height();
-        int wid = img.width();
+        return shiftBrightnessInto(img, val, new Mat(), pool);
+    }
+
+    /**
+     * @Description: 图像亮度调节，结果写入调用方提供的dst，dst尺寸、类型一致时直接复用其内存
+     * @Param: Mat 传入的图像矩阵
+     * @Param: val 调节系数
+     * @Param: dst 结果矩阵，可以与img相同
+     * @Return: dst
+     */
+    public static Mat shiftBrightnessInto(Mat img, int val, Mat dst) {
+        return shiftBrightnessInto(img, val, dst, null);
+    }
+
+    /**
+     * @Description: 图像亮度调节，结果写入调用方提供的dst，8位图像编译成 ToneCurve 查找表一次完成，其他深度按行分带并行
+     * @Param: Mat 传入的图像矩阵
+     * @Param: val 调节系数
+     * @Param: dst 结果矩阵，可以与img相同
+     * @Param: pool 非8位图像按行分带并行使用的线程池，为空时顺序执行；8位图像走 Core.LUT，不使用该参数
+     * @Return: dst
+     */
+    public static Mat shiftBrightnessInto(Mat img, int val, Mat dst, ForkJoinPool pool) {
+        if (val == BASE_VAL) {
+            if (dst != img) {
+                img.copyTo(dst);
+            }
+            return dst;
+        }
+        if (CvType.depth(img.type()) == CvType.CV_8U) {
+            return ToneCurve.identity(img.channels()).brightness(val).apply(img, dst);
+        }
         double f;
         boolean flag = false;
         if (val > BASE_VAL) {
@@ -237,20 +471,19 @@ public class ImagesUtil {
         } else {
             f = 1.0 * val / BASE_VAL;
         }
-        for (int i = 0; i < hei; i++) {
-            for (int j = 0; j < wid; j++) {
-                double[] vals = img.get(i, j);
-                for (int k = 0; k < vals.length; k++) {
-                    if (flag) {
-                        vals[k] = 255 - (vals[k] * f);
-                    } else {
-                        vals[k] = vals[k] * f;
-                    }
+        PixelBuffer buffer = PixelBuffer.of(img);
+        boolean increase = flag;
+        ParallelUtils.forEachBand(pool, buffer.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+            int end = buffer.index(toRow, 0);
+            for (int i = buffer.index(fromRow, 0); i < end; i++) {
+                if (increase) {
+                    buffer.setAt(i, 255 - (buffer.getAt(i) * f));
+                } else {
+                    buffer.setAt(i, buffer.getAt(i) * f);
                 }
-                ret.put(i, j, vals);
             }
-        }
-        return ret;
+        });
+        return buffer.write(dst);
     }
 
     /**
@@ -259,86 +492,66 @@ public class ImagesUtil {
      * @Return: 转置过后的图像矩阵
      */
     public static Mat transposition(Mat mat) {
-        Mat ret = new Mat(mat.width(), mat.height(), mat.type());
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                double[] vals = mat.get(i, j);
-                ret.put(j, i, vals);
-            }
-        }
-        return ret;
+        return transposition(mat, null);
     }
 
     /**
-     * @Description: 高斯函数
-     * @Param: x 到达中心的x方向距离
-     * @Param: y 到达中心的y方向距离
-     * @Param: y 到达中心的y方向距离
-     * @Return: variance 方差
+     * @Description: 将矩阵进行转置，按源图像的行分带并行
+     * @Param: mat 要转置的图像矩阵
+     * @Param: pool 并行执行的线程池，为空时顺序执行，可通过 ParallelUtils.pool 获取指定并行度的线程池
+     * @Return: 转置过后的图像矩阵
      */
-    private static double gaussianFunction(double x, double y, double variance) {
-        return 1.0 / (2 * Math.PI * variance * variance) * Math.exp((-x * x - y * y) / (2 * variance * variance));
-    }
-
-    private static boolean chackRange(int i, int j, int hei, int wid) {
-        return i >= 0 && i < hei && j >= 0 && j < wid;
-    }
-
-    private static Mat filtering(Mat mat, double[][] weightMatrix) {
-        Mat ret = new Mat(mat.height(), mat.width(), mat.type());
-        double[][][] m = new double[mat.height()][mat.width()][mat.get(0, 0).length];
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                m[i][j] = mat.get(i, j);
-            }
-        }
-
-        int halfCellSize = weightMatrix.length >>> 1;
-        int hei = mat.height();
-        int wid = mat.width();
-        for (int i = 0; i < hei; i++) {
-            for (int j = 0; j < wid; j++) {
-                double[] suma = new double[3];
-                double sumb = 0;
-                for (int k = 0; k < weightMatrix.length; k++) {
-                    for (int l = 0; l < weightMatrix.length; l++) {
-                        int loci = i - (halfCellSize - k);
-                        int locj = j - (halfCellSize - l);
-                        if (chackRange(loci, locj, mat.height(), mat.width())) {
-                            sumb += weightMatrix[k][l];
-                            for (int n = 0; n < suma.length; n++) {
-                                suma[n] += weightMatrix[k][l] * m[loci][locj][n];
-                            }
-                        }
+    public static Mat transposition(Mat mat, ForkJoinPool pool) {
+        PixelBuffer src = PixelBuffer.of(mat);
+        PixelBuffer dst = new PixelBuffer(src.getCols(), src.getRows(), src.getType());
+        int channels = src.getChannels();
+        ParallelUtils.forEachBand(pool, src.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+            for (int i = fromRow; i < toRow; i++) {
+                for (int j = 0; j < src.getCols(); j++) {
+                    int from = src.index(i, j), to = dst.index(j, i);
+                    for (int k = 0; k < channels; k++) {
+                        dst.setAt(to + k, src.getAt(from + k));
                     }
                 }
-                for (int k = 0; k < suma.length; k++) {
-                    suma[k] /= sumb;
-                }
-                ret.put(i, j, suma);
             }
-        }
-        return ret;
+        });
+        return dst.toMat();
     }
 
+    /**
+     * @Description: 高斯滤波，按可分离卷积分别做水平和垂直方向的一维卷积，并按行分带并行
+     * @Param: mat 要滤波的图像矩阵
+     * @Param: cellSize 滤波方框的大小
+     * @Param: variance 高斯函数的标准差
+     * @Return: 滤波完成后的矩阵
+     */
     public static Mat gaussianFiltering(Mat mat, int cellSize, double variance) {
-        //通过高斯函数计算每一个格子的权值
+        return gaussianFiltering(mat, cellSize, variance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @Description: 高斯滤波，按可分离卷积分别做水平和垂直方向的一维卷积，并按行分带并行
+     * @Param: mat 要滤波的图像矩阵
+     * @Param: cellSize 滤波方框的大小
+     * @Param: variance 高斯函数的标准差
+     * @Param: pool 并行执行的线程池，为空时顺序执行
+     * @Return: 滤波完成后的矩阵
+     */
+    public static Mat gaussianFiltering(Mat mat, int cellSize, double variance, ForkJoinPool pool) {
+        //通过高斯函数计算每一个格子的权值，二维高斯函数可以拆成两个一维高斯函数的乘积
         cellSize = standardizeCellSize(cellSize);
         int hCellSize = cellSize >>> 1;
-        double[][] tCell = new double[cellSize][cellSize];
+        double[] tCell = new double[cellSize];
         double sum = 0;
         for (int i = 0; i < tCell.length; i++) {
-            for (int j = 0; j < tCell[i].length; j++) {
-                tCell[i][j] = gaussianFunction(hCellSize - i, hCellSize - j, variance);
-                sum += tCell[i][j];
-            }
+            tCell[i] = Math.exp(-1.0 * (hCellSize - i) * (hCellSize - i) / (2 * variance * variance));
+            sum += tCell[i];
         }
+        //每个方向的权值和缩放到10，二维权值的和仍为100
         for (int i = 0; i < tCell.length; i++) {
-            for (int j = 0; j < tCell[i].length; j++) {
-                tCell[i][j] = tCell[i][j] * 100 / sum;
-            }
+            tCell[i] = tCell[i] * 10 / sum;
         }
-        return filtering(mat, tCell);
+        return FilterUtils.separableFilter(PixelBuffer.of(mat), tCell, tCell, null, pool).toMat();
     }
 
     /**
@@ -348,37 +561,18 @@ public class ImagesUtil {
      * @Return: 滤波完成后的矩阵
      */
     public static Mat averageFiltering(Mat mat, int cellSize) {
-        //TODO 性能优化
-        Mat ret = new Mat(mat.height(), mat.width(), mat.type());
-        double[][][] mm = new double[mat.height()][mat.width()][mat.get(0, 0).length];
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                mm[i][j] = mat.get(i, j);
-            }
-        }
+        return averageFiltering(PixelBuffer.of(mat), cellSize).toMat();
+    }
+
+    /**
+     * @Description: 均值滤波，基于积分图实现，耗时与方框大小无关
+     * @Param: buffer 要滤波的图像缓冲区
+     * @Param: cellSize 滤波方框的大小
+     * @Return: 滤波完成后的缓冲区
+     */
+    private static PixelBuffer averageFiltering(PixelBuffer buffer, int cellSize) {
         cellSize = standardizeCellSize(cellSize);
-        int halfCellSiz = cellSize >> 1;
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                double[] to = new double[3];
-                int fi = i - halfCellSiz, ti = i + halfCellSiz, fj = j - halfCellSiz, tj = j + halfCellSiz;
-                for (int k = 0; k < to.length; k++) {
-                    double sum = 0;
-                    int cnt = 0;
-                    for (int l = fi; l <= ti; l++) {
-                        for (int m = fj; m <= tj; m++) {
-                            if (l >= 0 && l < mat.height() && m >= 0 && m < mat.width()) {
-                                sum += mm[l][m][k];
-                                cnt++;
-                            }
-                        }
-                    }
-                    to[k] = sum / cnt;
-                }
-                ret.put(i, j, to);
-            }
-        }
-        return ret;
+        return FilterUtils.boxFilter(buffer, cellSize >> 1, null);
     }
 
     /**
@@ -389,58 +583,37 @@ public class ImagesUtil {
      * @Return: 锐化过后的矩阵
      */
     public static Mat sharpen(Mat mat, int cellSize, int factor) {
-        Mat filter = averageFiltering(mat, cellSize);
-        Mat ret = new Mat(mat.height(), mat.width(), mat.type());
-        for (int i = 0; i < ret.height(); i++) {
-            for (int j = 0; j < ret.width(); j++) {
-                double[] rgb = mat.get(i, j);
-                double[] frgb = filter.get(i, j);
-                for (int k = 0; k < rgb.length; k++) {
-                    rgb[k] += factor * (rgb[k] - frgb[k]);
-                }
-                ret.put(i, j, rgb);
-            }
+        PixelBuffer ret = PixelBuffer.of(mat);
+        PixelBuffer filter = averageFiltering(ret, cellSize);
+        int length = ret.length();
+        for (int i = 0; i < length; i++) {
+            double v = ret.getAt(i);
+            ret.setAt(i, v + factor * (v - filter.getAt(i)));
         }
-        return ret;
+        return ret.toMat();
     }
 
     /**
      *
-     * 求图像的暗通道
+     * 求图像的暗通道：先取每个像素各通道的最小值，再在 cellSize x cellSize 的方框内取最小值
      */
-    private static double[][] getDarkChannel(Mat mat, int cellSize) {
+    private static float[] getDarkChannel(PixelBuffer buffer, int cellSize) {
         if (cellSize % 2 == 0) {
             cellSize++;
         }
         int hcellSize = cellSize >>> 1;
-        double[][] doubles = new double[mat.height()][mat.width()];
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                double[] vals = mat.get(i, j);
-                doubles[i][j] = vals[0];
-                for (int k = 1; k < vals.length; k++) {
-                    doubles[i][j] = (doubles[i][j] < vals[k]) ? doubles[i][j] : vals[k];
-                }
-            }
-        }
-
-        double[][] ret = new double[mat.height()][mat.width()];
-        for (int i = 0; i < mat.height(); i++) {
-            for (int j = 0; j < mat.width(); j++) {
-                double maxx = 300;
-                for (int k = 0; k < cellSize; k++) {
-                    for (int l = 0; l < cellSize; l++) {
-                        int locx = i + (k - hcellSize);
-                        int locy = j + (l - hcellSize);
-                        if (locx >= 0 && locx < ret.length && locy >= 0 && locy < ret[locx].length) {
-                            maxx = (maxx < doubles[locx][locy]) ? maxx : doubles[locx][locy];
-                        }
-                    }
-                }
-                ret[i][j] = maxx;
+        int channels = buffer.getChannels();
+        int length = buffer.getRows() * buffer.getCols();
+        float[] dark = new float[length];
+        for (int i = 0, from = 0; i < length; i++, from += channels) {
+            double min = buffer.getAt(from);
+            for (int k = 1; k < channels; k++) {
+                double v = buffer.getAt(from + k);
+                min = (min < v) ? min : v;
             }
+            dark[i] = (float) min;
         }
-        return ret;
+        return FilterUtils.minFilter(dark, buffer.getRows(), buffer.getCols(), hcellSize, dark);
     }
 
     /**
@@ -450,21 +623,17 @@ public class ImagesUtil {
      * @Return: 去雾完成的图像
      */
     public static Mat disFog(Mat mat, int cellSize) {
-        double[][] dackCha = getDarkChannel(mat, cellSize);
-        Mat ret = new Mat(mat.height(), mat.width(), mat.type());
-
-        for (int i = 0; i < ret.height(); i++) {
-            for (int j = 0; j < ret.width(); j++) {
-                double[] valsTo = new double[3];
-                double[] valsFrom = mat.get(i, j);
-                double f = dackCha[i][j] / 255;
-                for (int k = 0; k < valsFrom.length; k++) {
-                    valsTo[k] = (valsFrom[k] - 127 * f) / (1 - f);
-                }
-                ret.put(i, j, valsTo);
+        PixelBuffer ret = PixelBuffer.of(mat);
+        float[] dackCha = getDarkChannel(ret, cellSize);
+        int channels = ret.getChannels();
+
+        for (int i = 0, loc = 0; i < dackCha.length; i++, loc += channels) {
+            double f = dackCha[i] / 255.0;
+            for (int k = 0; k < channels; k++) {
+                ret.setAt(loc + k, (ret.getAt(loc + k) - 127 * f) / (1 - f));
             }
         }
-        return ret;
+        return ret.toMat();
     }
 
     /**
@@ -473,24 +642,27 @@ public class ImagesUtil {
      * @Return: 表示图像边缘的矩阵
      */
     public static Mat edgeDetection(Mat img) {
-        Mat clone = img.clone();
-        int sizex = 5, sizey = 5;
-        double dx = 0, dy = 0;
-        Imgproc.GaussianBlur(clone, clone, new Size(sizex, sizey), dx, dy, BORDER_DEFAULT);
-        Mat grad_x = new Mat(), grad_y = new Mat(), src_gray = new Mat();
-        Mat abs_grad_x = new Mat(), abs_grad_y = new Mat();
-        cvtColor(clone, src_gray, Imgproc.COLOR_BGR2GRAY);
-        int scale = 1;
-        int delta = 0;
-        int ddepth = CV_16S;
-        Sobel(src_gray, grad_x, ddepth, 1, 0, 3, scale, delta, BORDER_DEFAULT);
-        convertScaleAbs(grad_x, abs_grad_x);
-
-        Sobel(src_gray, grad_y, ddepth, 0, 1, 3, scale, delta, BORDER_DEFAULT);
-        convertScaleAbs(grad_y, abs_grad_y);
-        Mat ret = new Mat();
-        addWeighted(abs_grad_x, 0.5, abs_grad_y, 0.5, 0, ret);
-        return ret;
+        try (MatScope scope = new MatScope()) {
+            // 模糊结果直接写入新的 Mat，不需要先复制原图
+            Mat blur = scope.mat();
+            int sizex = 5, sizey = 5;
+            double dx = 0, dy = 0;
+            Imgproc.GaussianBlur(img, blur, new Size(sizex, sizey), dx, dy, BORDER_DEFAULT);
+            Mat grad_x = scope.mat(), grad_y = scope.mat(), src_gray = scope.mat();
+            Mat abs_grad_x = scope.mat(), abs_grad_y = scope.mat();
+            cvtColor(blur, src_gray, Imgproc.COLOR_BGR2GRAY);
+            int scale = 1;
+            int delta = 0;
+            int ddepth = CV_16S;
+            Sobel(src_gray, grad_x, ddepth, 1, 0, 3, scale, delta, BORDER_DEFAULT);
+            convertScaleAbs(grad_x, abs_grad_x);
+
+            Sobel(src_gray, grad_y, ddepth, 0, 1, 3, scale, delta, BORDER_DEFAULT);
+            convertScaleAbs(grad_y, abs_grad_y);
+            Mat ret = new Mat();
+            addWeighted(abs_grad_x, 0.5, abs_grad_y, 0.5, 0, ret);
+            return ret;
+        }
     }
 
     /**
@@ -499,20 +671,33 @@ public class ImagesUtil {
      * @Return: 经过油画处理的图像
      */
     public static Mat oilPainting(Mat img) {
+        return oilPainting(img, null);
+    }
+
+    /**
+     * @Description: 为图像添加类似油画的效果，按行分带并行
+     * @Param: img 等待处理的图像
+     * @Param: pool 并行执行的线程池，为空时顺序执行，可通过 ParallelUtils.pool 获取指定并行度的线程池
+     * @Return: 经过油画处理的图像
+     */
+    public static Mat oilPainting(Mat img, ForkJoinPool pool) {
 
         Mat mat1 = edgeDetection(img);
         Imgproc.GaussianBlur(img, img, new Size(11, 11), 20, 20, Core.BORDER_DEFAULT);
-        for (int i = 0; i < img.height(); i++) {
-            for (int j = 0; j < img.width(); j++) {
-                double[] doubles = img.get(i, j);
-                double[] doubles1 = mat1.get(i, j);
-                for (int k = 0; k < doubles.length; k++) {
-                    doubles[k] -= 1 * doubles1[0];
+        PixelBuffer buffer = PixelBuffer.of(img);
+        PixelBuffer edge = PixelBuffer.of(mat1);
+        mat1.release();
+        int channels = buffer.getChannels(), edgeChannels = edge.getChannels();
+        ParallelUtils.forEachBand(pool, buffer.getRows(), ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+            int end = buffer.index(toRow, 0);
+            for (int i = buffer.index(fromRow, 0), e = edge.index(fromRow, 0); i < end; i += channels, e += edgeChannels) {
+                double d = edge.getAt(e);
+                for (int k = 0; k < channels; k++) {
+                    buffer.setAt(i + k, buffer.getAt(i + k) - 1 * d);
                 }
-                img.put(i, j, doubles);
             }
-        }
-        return img;
+        });
+        return buffer.write(img);
     }
 
     /**
@@ -631,6 +816,8 @@ public class ImagesUtil {
 
         // CORREL 相关系数
         double res = Imgproc.compareHist(hist_1, hist_2, Imgproc.CV_COMP_CORREL);
+        hist_1.release();
+        hist_2.release();
         if (res > 0.72) {
             log.warn("人脸匹配,匹配值为：{}",res);
         } else {
@@ -2,8 +2,11 @@ package xyz.byan.opencv.util;
 
 import lombok.experimental.UtilityClass;
 import org.opencv.core.Mat;
+import xyz.byan.opencv.domain.PixelBuffer;
+import xyz.byan.opencv.domain.Projection;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -14,6 +17,16 @@ import java.util.List;
 @UtilityClass
 public class MathUtils {
 
+    /**
+     * 直方图计数用的数组，每个线程一个
+     */
+    private static final ThreadLocal<int[]> HISTOGRAM = ThreadLocal.withInitial(() -> new int[ThresholdUtils.LEVELS]);
+
+    /**
+     * 元素个数少于这个值时直接插入排序
+     */
+    private static final int SMALL = 16;
+
     /**
      * 把opencv的灰度图Mat转化为List<List<Double>> , 即数组对象
      * List<Double>是每一列的灰度值
@@ -37,35 +50,72 @@ public class MathUtils {
         if(gray == null){
             throw new RuntimeException("不能传入空对象");
         }
-        List<List<Double>> result = new ArrayList<>();
-        int x , y;
-        int i , j;
-        double[] value;
-        if(b){
-            //List<Double>是每一列的灰度值
-            x = gray.width();
-            y = gray.height();
-        }else{
-            //List<Double>是每一行的灰度值
-            x = gray.height();
-            y = gray.width();
-        }
-
-        for(i = 0 ; i < x ; i++){
-            List<Double> oneLine = new ArrayList<>();
-            for(j = 0 ; j < y ; j++){
-                if(b){
-                    value = gray.get(j , i);
-                }else{
-                    value = gray.get(i , j);
+        double[][] lines = lines(PixelBuffer.of(gray), b);
+        List<List<Double>> result = new ArrayList<>(lines.length);
+        for (double[] line : lines) {
+            result.add(toList(line));
+        }
+        return result;
+    }
+
+    /**
+     * 把图像第一个通道的像素按列(或按行)复制到二维数组中
+     * @param buffer
+     * @param column true 表示每个数组是一列的像素值，否则是一行的像素值
+     * @return
+     */
+    public static double[][] lines(PixelBuffer buffer, boolean column) {
+        int rows = buffer.getRows(), cols = buffer.getCols(), channels = buffer.getChannels();
+        double[][] ret = column ? new double[cols][rows] : new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            int base = buffer.index(i, 0);
+            for (int j = 0; j < cols; j++) {
+                double v = buffer.getAt(base + j * channels);
+                if (column) {
+                    ret[j][i] = v;
+                } else {
+                    ret[i][j] = v;
                 }
+            }
+        }
+        return ret;
+    }
 
-                oneLine.add(value[0]);
+    /**
+     * 统计每一列(行)第一个通道中等于 value 的像素个数，即图像在水平(垂直)方向的投影
+     * @param buffer
+     * @param column true 表示按列统计，false 表示按行统计
+     * @param value
+     * @return
+     */
+    public static int[] projection(PixelBuffer buffer, boolean column, int value) {
+        int rows = buffer.getRows(), cols = buffer.getCols(), channels = buffer.getChannels();
+        int[] ret = new int[column ? cols : rows];
+        for (int i = 0; i < rows; i++) {
+            int base = buffer.index(i, 0);
+            for (int j = 0; j < cols; j++) {
+                if (buffer.getInt(base + j * channels) == value) {
+                    ret[column ? j : i]++;
+                }
             }
-            result.add(oneLine);
         }
+        return ret;
+    }
 
-        return result;
+    private static List<Double> toList(double[] values) {
+        List<Double> ret = new ArrayList<>(values.length);
+        for (double v : values) {
+            ret.add(v);
+        }
+        return ret;
+    }
+
+    private static double[] toArray(List<Double> list) {
+        double[] ret = new double[list.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = list.get(i);
+        }
+        return ret;
     }
 
     /**
@@ -74,15 +124,7 @@ public class MathUtils {
      * @return
      */
     public static List<Double> avgColMat(Mat grayMat){
-        List<List<Double>> data = MatPixelToList(grayMat);
-
-        List<Double> result = new ArrayList<>();
-
-        for(List<Double> col : data) {
-            double sum = getSumInList(col);
-            result.add(sum / col.size());
-        }
-        return result;
+        return toList(Projection.columns(PixelBuffer.of(grayMat)).mean());
     }
 
 
@@ -92,18 +134,51 @@ public class MathUtils {
      * @return
      */
     public static List<Double> avgRowMat(Mat grayMat){
-        List<List<Double>> data = MatPixelToList(grayMat , false);
-
-        List<Double> result = new ArrayList<>();
+        return toList(Projection.rows(PixelBuffer.of(grayMat)).mean());
+    }
 
-        for(List<Double> row : data) {
-            double sum = getSumInList(row);
-            result.add(sum / row.size());
+    /**
+     * 返回数组中的最大值
+     * @param values
+     * @return
+     */
+    public static double max(double[] values){
+        double max = values[0];
+        for(double d : values){
+            if(d > max){
+                max = d;
+            }
         }
-        return result;
+        return max;
     }
 
+    /**
+     * 返回数组中的最小值
+     * @param values
+     * @return
+     */
+    public static double min(double[] values){
+        double min = values[0];
+        for(double d : values){
+            if(d < min){
+                min = d;
+            }
+        }
+        return min;
+    }
 
+    /**
+     * 返回数组的总和
+     * @param values
+     * @return
+     */
+    public static double sum(double[] values){
+        double sum = 0;
+        for(double d : values){
+            sum += d;
+        }
+        return sum;
+    }
 
     /**
      * 返回list集合中最大的那个数
@@ -114,13 +189,7 @@ public class MathUtils {
         if(list == null){
             throw new RuntimeException("不能传入空对象");
         }
-        double max = list.get(0);
-        for(double d : list){
-            if(d > max){
-                max = d;
-            }
-        }
-        return max;
+        return max(toArray(list));
     }
 
     /**
@@ -132,13 +201,7 @@ public class MathUtils {
         if(list == null){
             throw new RuntimeException("不能传入空对象");
         }
-        double min = list.get(0);
-        for(double d : list){
-            if(d < min){
-                min = d;
-            }
-        }
-        return min;
+        return min(toArray(list));
     }
 
     /**
@@ -150,73 +213,182 @@ public class MathUtils {
         if(list == null){
             throw new RuntimeException("不能传入空对象");
         }
-        double sum = 0;
-        for(double d : list){
-            sum += d;
-        }
-        return sum;
+        return sum(toArray(list));
     }
 
     /**
-     * 寻找第k大的元素，快速排序实现
+     * 寻找第k大的元素
      * @param nums
      * @param k
-     * @return
+     * @return k不合法时返回-1
      */
     public static double findKthLargest(List<Double> nums , int k){
-        int len = nums.size();
-        Double[] doubles1 = new Double[len];
-        for(int i = 0 ; i < len ; i++){
-            doubles1[i] = (Double)nums.get(i);
-        }
-
-        return findKthLargest(doubles1 , k);
+        return findKthLargest(toArray(nums) , k , false);
     }
 
     /**
-     * 寻找第k大的元素，快速排序实现
+     * 寻找第k大的元素
      * @param nums
      * @param k
-     * @return
+     * @return k不合法时返回-1
      */
     public static double findKthLargest(Double[] nums, int k) {
+        if (nums == null) {
+            return -1;
+        }
+        double[] values = new double[nums.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = nums[i];
+        }
+        return findKthLargest(values, k, false);
+    }
+
+    /**
+     * 寻找第k大的元素，不修改数组。
+     * 全部是0~255的整数(8位图像的像素值)时通过直方图计数选择，O(n + 256)，不分配内存；
+     * 其他情况在数组的副本上做 introselect：三路划分的快速选择，划分次数超过 2log(n) 时改用中位数的中位数选主元，
+     * 最坏情况也是线性时间，大量重复值时不会退化
+     * @param nums
+     * @param k
+     * @return k不合法时返回-1
+     */
+    public static double findKthLargest(double[] nums, int k) {
+        return findKthLargest(nums, k, true);
+    }
+
+    /**
+     * @param copy 为false时直接在 nums 上做选择，会打乱数组的顺序
+     */
+    private static double findKthLargest(double[] nums, int k, boolean copy) {
         if (k < 1 || nums == null || k > nums.length) {
             return -1;
         }
-        return getKth(nums.length - k + 1, nums, 0, nums.length - 1);
+        int[] hist = HISTOGRAM.get();
+        if (histogram(nums, hist)) {
+            return findKthLargest(hist, k);
+        }
+        double[] work = copy ? nums.clone() : nums;
+        return select(work, 0, work.length - 1, work.length - k);
+    }
+
+    /**
+     * 在直方图中寻找第k大的像素值，O(256)
+     * @param hist 每个像素值出现的次数
+     * @param k
+     * @return k不合法时返回-1
+     */
+    public static int findKthLargest(int[] hist, int k) {
+        if (k < 1) {
+            return -1;
+        }
+        for (int v = hist.length - 1; v >= 0; v--) {
+            k -= hist[v];
+            if (k <= 0) {
+                return v;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 数组全部是0~255的整数时统计直方图
+     * @return 有其他值时返回false
+     */
+    private static boolean histogram(double[] nums, int[] hist) {
+        for (double v : nums) {
+            if (!(v >= 0 && v < ThresholdUtils.LEVELS) || v != (int) v) {
+                return false;
+            }
+        }
+        Arrays.fill(hist, 0);
+        for (double v : nums) {
+            hist[(int) v]++;
+        }
+        return true;
     }
 
+    /**
+     * 寻找[start, end]范围内第k小的元素(k从1开始，是整个数组中的下标加1)
+     * @param k
+     * @param nums
+     * @param start
+     * @param end
+     * @return
+     */
     public static double getKth(int k, Double[] nums, int start, int end) {
-        double pivot = nums[end];
-        int left = start;
-        int right = end;
+        double[] values = new double[end - start + 1];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = nums[start + i];
+        }
+        return select(values, 0, values.length - 1, k - 1 - start);
+    }
+
+    /**
+     * introselect：把[from, to]中第k小(从0开始)的元素放到下标k处并返回
+     */
+    private static double select(double[] a, int from, int to, int k) {
+        int budget = 2 * (32 - Integer.numberOfLeadingZeros(to - from + 1));
         while (true) {
-            while (nums[left] < pivot && left < right) {
-                left++;
+            if (to - from < SMALL) {
+                insertionSort(a, from, to);
+                return a[k];
             }
-            while (nums[right] >= pivot && right > left) {
-                right--;
+            double pivot = budget-- > 0 ? medianOf3(a[from], a[(from + to) >>> 1], a[to]) : medianOfMedians(a, from, to);
+            // 三路划分：[from, lt)小于主元，[lt, gt]等于主元，(gt, to]大于主元
+            int lt = from, i = from, gt = to;
+            while (i <= gt) {
+                if (a[i] < pivot) {
+                    swap(lt++, i++, a);
+                } else if (a[i] > pivot) {
+                    swap(i, gt--, a);
+                } else {
+                    i++;
+                }
             }
-            if (left == right) {
-                break;
+            if (k < lt) {
+                to = lt - 1;
+            } else if (k > gt) {
+                from = gt + 1;
+            } else {
+                return pivot;
             }
-            swap(left, right , nums);
         }
-        swap(left, end , nums);
-        if (k == left + 1) { return pivot; }
-        else if (k < left + 1) { return getKth(k, nums, start, left - 1); }
-        else { return getKth(k, nums, left + 1, end); }
     }
 
+    private static double medianOf3(double a, double b, double c) {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        }
+        return a < c ? a : (b < c ? c : b);
+    }
 
     /**
-     * 交换数组中l1和l2的数据
-     * @param l1
-     * @param l2
-     * @param arr
-     * @return
+     * 每5个元素一组取中位数，放到区间的开头，再取这些中位数的中位数作为主元
      */
-    private static void swap(int l1 , int l2 , Double[] arr){
+    private static double medianOfMedians(double[] a, int from, int to) {
+        int groups = 0;
+        for (int i = from; i <= to; i += 5) {
+            int end = Math.min(i + 4, to);
+            insertionSort(a, i, end);
+            swap(from + groups++, (i + end) >>> 1, a);
+        }
+        int mid = from + (groups - 1) / 2;
+        return select(a, from, from + groups - 1, mid);
+    }
+
+    private static void insertionSort(double[] a, int from, int to) {
+        for (int i = from + 1; i <= to; i++) {
+            double v = a[i];
+            int j = i - 1;
+            while (j >= from && a[j] > v) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = v;
+        }
+    }
+
+    private static void swap(int l1 , int l2 , double[] arr){
         double temp = arr[l1];
         arr[l1] = arr[l2];
         arr[l2] = temp;
@@ -0,0 +1,122 @@
+package xyz.byan.opencv.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 15:36.
+ * @description: 按行分带(row band)并行处理图像的工具类
+ * 图像按行切成若干条带，每条带作为一个任务提交到 ForkJoinPool 中执行，各条带写入共享缓冲区中互不重叠的区域
+ */
+@UtilityClass
+public class ParallelUtils {
+
+    /**
+     * 默认每条带的行数
+     */
+    public static final int DEFAULT_BAND_ROWS = 64;
+
+    /**
+     * 按并行度缓存的线程池，相同并行度的调用点共用同一个线程池；
+     * 并行度限制在 [1, CPU核数] 内，最多缓存 CPU核数 个线程池，空闲的工作线程由 ForkJoinPool 自行回收
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * 获取指定并行度的共享线程池，用于在调用点按需控制并行的线程数
+     * 按行分带的任务都是计算密集型，超过CPU核数的并行度不会更快，按CPU核数处理
+     * @param parallelism 并行度，小于等于0或大于CPU核数时使用CPU核数
+     * @return 共享的线程池，调用方不能关闭；需要独占、用完关闭的线程池时使用 newPool
+     */
+    public static ForkJoinPool pool(int parallelism) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (parallelism <= 0 || parallelism > cores) {
+            parallelism = cores;
+        }
+        if (parallelism == ForkJoinPool.commonPool().getParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    /**
+     * 新建调用方独占的线程池，不缓存，用完后由调用方 shutdown
+     * @param parallelism 并行度，小于等于0时使用CPU核数
+     * @return
+     */
+    public static ForkJoinPool newPool(int parallelism) {
+        return new ForkJoinPool(parallelism <= 0 ? Runtime.getRuntime().availableProcessors() : parallelism);
+    }
+
+    /**
+     * 处理[fromRow, toRow)行的任务
+     */
+    public interface BandTask {
+        void run(int fromRow, int toRow);
+    }
+
+    /**
+     * 在公共 ForkJoinPool 中按默认带宽并行处理所有行
+     * @param rows 总行数
+     * @param task
+     */
+    public static void forEachBand(int rows, BandTask task) {
+        forEachBand(ForkJoinPool.commonPool(), rows, DEFAULT_BAND_ROWS, task);
+    }
+
+    /**
+     * 在指定的 ForkJoinPool 中并行处理所有行
+     * @param pool 线程池，为空时在当前线程中顺序执行
+     * @param rows 总行数
+     * @param bandRows 每条带的行数
+     * @param task
+     */
+    public static void forEachBand(ForkJoinPool pool, int rows, int bandRows, BandTask task) {
+        if (rows <= 0) {
+            return;
+        }
+        if (bandRows <= 0) {
+            bandRows = DEFAULT_BAND_ROWS;
+        }
+        int bands = (rows + bandRows - 1) / bandRows;
+        if (pool == null || bands == 1 || pool.getParallelism() == 1) {
+            task.run(0, rows);
+            return;
+        }
+        pool.invoke(new BandAction(task, rows, bandRows, 0, bands));
+    }
+
+    private static class BandAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BandTask task;
+        private final int rows;
+        private final int bandRows;
+        private final int fromBand;
+        private final int toBand;
+
+        BandAction(BandTask task, int rows, int bandRows, int fromBand, int toBand) {
+            this.task = task;
+            this.rows = rows;
+            this.bandRows = bandRows;
+            this.fromBand = fromBand;
+            this.toBand = toBand;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBand - fromBand == 1) {
+                task.run(fromBand * bandRows, Math.min((fromBand + 1) * bandRows, rows));
+                return;
+            }
+            int mid = (fromBand + toBand) >>> 1;
+            invokeAll(new BandAction(task, rows, bandRows, fromBand, mid),
+                    new BandAction(task, rows, bandRows, mid, toBand));
+        }
+    }
+}
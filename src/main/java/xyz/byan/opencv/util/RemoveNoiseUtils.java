@@ -2,9 +2,12 @@ package xyz.byan.opencv.util;
 
 import lombok.experimental.UtilityClass;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.BitMatrix;
+import xyz.byan.opencv.domain.ConnectedComponents;
+import xyz.byan.opencv.domain.PixelBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author: bai
@@ -24,193 +27,231 @@ public class RemoveNoiseUtils {
      * @return
      */
     public static Mat eghitRemoveNoise(Mat src, int pNum) {
-        int i, j, m, n, nValue, nCount;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
+        return eghitRemoveNoise(src, pNum, 1);
+    }
 
-        // 如果一个点的周围都是白色的，自己确实黑色的，同化
-        for (j = 1; j < height - 1; j++) {
-            for (i = 1; i < width - 1; i++) {
-                nValue = GeneralUtils.getPixel(src, j, i);
-                if (nValue == 0) {
-                    nCount = 0;
-                    // 比较(j , i)周围的9宫格，如果周围都是白色，同化
-                    for (m = j - 1; m <= j + 1; m++) {
-                        for (n = i - 1; n <= i + 1; n++) {
-                            if (GeneralUtils.getPixel(src, m, n) == 0) {
-                                nCount++;
-                            }
-                        }
-                    }
-                    if (nCount <= pNum) {
-                        // 周围黑色点的个数小于阀值pNum,把自己设置成白色
-                        GeneralUtils.setPixel(src, j, i, GeneralUtils.getWHITE());
-                    }
-                } else {
-                    nCount = 0;
-                    // 比较(j , i)周围的9宫格，如果周围都是黑色，同化
-                    for (m = j - 1; m <= j + 1; m++) {
-                        for (n = i - 1; n <= i + 1; n++) {
-                            if (GeneralUtils.getPixel(src, m, n) == 0) {
-                                nCount++;
-                            }
-                        }
-                    }
-                    if (nCount >= 8 - pNum) {
-                        // 周围黑色点的个数大于等于(8 - pNum),把自己设置成黑色
-                        GeneralUtils.setPixel(src, j, i, GeneralUtils.getBLACK());
-                    }
-                }
+    /**
+     * 多次8邻域降噪，按行从左到右原地更新，已处理的点会影响后面的点，与逐次调用 eghitRemoveNoise(src, pNum) 的结果一致
+     * 图像先压缩成位图(BitMatrix)，9宫格中黑色点的个数通过滑动窗口增量计算，全白或全黑的64个点整块跳过
+     *
+     * @param src
+     *            Mat矩阵对象
+     * @param pNum
+     *            阀值 默认取1即可
+     * @param iterations
+     *            迭代次数
+     * @return
+     */
+    public static Mat eghitRemoveNoise(Mat src, int pNum, int iterations) {
+        PixelBuffer buffer = PixelBuffer.of(src);
+        BitMatrix bits = BitMatrix.of(buffer);
+        BitMatrix touched = new BitMatrix(bits.getRows(), bits.getCols());
+        for (int k = 0; k < iterations; k++) {
+            for (int j = 1; j < bits.getRows() - 1; j++) {
+                eightNeighbour(bits, bits, touched, j, pNum);
             }
         }
-        return src;
+        bits.writeTo(buffer, touched);
+        return buffer.write(src);
     }
 
     /**
-     * 连通域降噪 作用：降噪(默认白底黑字)
+     * 多次8邻域降噪，双缓冲模式：每次迭代都只根据上一次迭代的结果计算，与处理顺序无关，各行可以在 pool 中并行处理
+     * 结果与原地更新的 eghitRemoveNoise 不同，但对同样的输入总是确定的
      *
      * @param src
      *            Mat矩阵对象
-     * @param pArea
+     * @param pNum
      *            阀值 默认取1即可
+     * @param iterations
+     *            迭代次数
+     * @param pool
+     *            并行执行的线程池，为空时顺序执行
      * @return
      */
-    public static Mat connectedRemoveNoise(Mat src, double pArea) {
-        int i, j, color = 1;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-
-        Result result = floodFill(new Result(src) , pArea);
-        src = result.mat;
-
-        // 二值化
-        for (i = 0; i < width; i++) {
-            for (j = 0; j < height; j++) {
-                if (GeneralUtils.getPixel(src, j, i) < GeneralUtils.getWHITE()) {
-                    GeneralUtils.setPixel(src, j, i, GeneralUtils.getBLACK());
+    public static Mat eghitRemoveNoise(Mat src, int pNum, int iterations, ForkJoinPool pool) {
+        PixelBuffer buffer = PixelBuffer.of(src);
+        BitMatrix bits = BitMatrix.of(buffer);
+        BitMatrix touched = new BitMatrix(bits.getRows(), bits.getCols());
+        int rows = bits.getRows();
+        for (int k = 0; k < iterations && rows > 2; k++) {
+            BitMatrix read = bits, write = bits.copy();
+            ParallelUtils.forEachBand(pool, rows - 2, ParallelUtils.DEFAULT_BAND_ROWS, (fromRow, toRow) -> {
+                for (int j = fromRow + 1; j <= toRow; j++) {
+                    eightNeighbour(read, write, touched, j, pNum);
                 }
-            }
+            });
+            bits = write;
         }
+        bits.writeTo(buffer, touched);
+        return buffer.write(src);
+    }
 
-        if(result.status == false && result.count <= 100){
-            connectedRemoveNoise(src , pArea);
+    /**
+     * 处理第j行(不含首尾两列)：read 与 write 相同时为原地更新，否则只读 read、只写 write
+     * sum 为当前点9宫格内黑色点的个数，每向右移动一列减去左边一列、加上右边一列
+     */
+    private static void eightNeighbour(BitMatrix read, BitMatrix write, BitMatrix touched, int j, int pNum) {
+        int width = read.getCols(), wordsPerRow = read.getWordsPerRow();
+        long[] rw = read.getWords(), ww = write.getWords(), tw = touched.getWords();
+        int up = (j - 1) * wordsPerRow, cur = j * wordsPerRow, down = (j + 1) * wordsPerRow;
+        boolean valid = false;
+        int sum = 0;
+        int i = 1;
+        while (i < width - 1) {
+            int w = i >>> 6;
+            if (i == 1 || (i & 63) == 0) {
+                int uniform = uniform(rw, up, cur, down, w, width);
+                // 全白的块中白点的个数为0，全黑的块中黑点的个数为9，阀值不够时整块都不会变化
+                if ((uniform == 0 && pNum < 8) || (uniform == 1 && pNum < 9)) {
+                    i = (w + 1) << 6;
+                    valid = false;
+                    continue;
+                }
+            }
+            if (!valid) {
+                sum = column(rw, up, cur, down, i - 1) + column(rw, up, cur, down, i) + column(rw, up, cur, down, i + 1);
+                valid = true;
+            }
+            long bit = 1L << i;
+            if ((rw[cur + w] & bit) != 0) {
+                if (sum <= pNum) {
+                    // 周围黑色点的个数小于阀值pNum,把自己设置成白色
+                    ww[cur + w] &= ~bit;
+                    tw[cur + w] |= bit;
+                    if (rw == ww) {
+                        sum--;
+                    }
+                }
+            } else if (sum >= 8 - pNum) {
+                // 周围黑色点的个数大于等于(8 - pNum),把自己设置成黑色
+                ww[cur + w] |= bit;
+                tw[cur + w] |= bit;
+                if (rw == ww) {
+                    sum++;
+                }
+            }
+            if (i + 2 < width) {
+                sum += column(rw, up, cur, down, i + 2) - column(rw, up, cur, down, i - 1);
+            }
+            i++;
         }
+    }
 
-        return src;
+    /**
+     * 第x列上中下三个点中黑色点的个数
+     */
+    private static int column(long[] words, int up, int cur, int down, int x) {
+        int w = x >>> 6;
+        return (int) ((words[up + w] >>> x & 1) + (words[cur + w] >>> x & 1) + (words[down + w] >>> x & 1));
     }
 
+    /**
+     * 第w块64列及其左右各一列在上中下三行中是否同色
+     * @return 0：全白，1：全黑，-1：混合
+     */
+    private static int uniform(long[] words, int up, int cur, int down, int w, int width) {
+        int from = w << 6;
+        int left = from - 1, right = from + 64;
+        long a = words[up + w], b = words[cur + w], c = words[down + w];
+        if ((a | b | c) == 0) {
+            if (left >= 0 && column(words, up, cur, down, left) != 0) {
+                return -1;
+            }
+            if (right < width && column(words, up, cur, down, right) != 0) {
+                return -1;
+            }
+            return 0;
+        }
+        if ((a & b & c) == -1L && left >= 0 && right < width
+                && column(words, up, cur, down, left) == 3 && column(words, up, cur, down, right) == 3) {
+            return 1;
+        }
+        return -1;
+    }
 
     /**
-     * 连通域填充颜色
-     * @param result
+     * 连通域降噪 作用：降噪(默认白底黑字)
+     *
+     * @param src
+     *            Mat矩阵对象
+     * @param pArea
+     *            阀值 默认取1即可
      * @return
      */
-    public static Result floodFill(Result result , double pArea){
-        Mat src = result.mat;
-        if(src == null){
-            return null;
+    public static Mat connectedRemoveNoise(Mat src, double pArea) {
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ConnectedComponents cc = ConnectedComponents.of(buffer, GeneralUtils.getBLACK());
+        int[] labels = cc.getLabels(), area = cc.getArea();
+        int channels = buffer.getChannels();
+        // 面积不超过阀值的连通域置为白色
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] != 0 && area[labels[p] - 1] <= pArea) {
+                buffer.setAt(p * channels, GeneralUtils.getWHITE());
+            }
         }
-        int i, j, color = 1;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
 
-        for (i = 0; i < width; i++) {
-            for (j = 0; j < height; j++) {
-                if (GeneralUtils.getPixel(src, j, i) == GeneralUtils.getBLACK()) {
-                    // 用不同的颜色填充连接区域中的每个黑色点
-                    // floodFill就是把与点(i , j)的所有相连通的区域都涂上color颜色
-                    int area = Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(color));
-                    if(area <= pArea) {
-                        Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(255));
-                    }else{
-                        color++;
-                    }
-                    if(color == 255){
-                        result.status = false;//连通域还没填充完
-                        result.mat = src;
-                        result.count = result.count + 1;
-                        return result;
-                    }
-                }
+        // 二值化
+        int length = buffer.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.getInt(i) < GeneralUtils.getWHITE()) {
+                buffer.setAt(i, GeneralUtils.getBLACK());
             }
         }
-        result.mat = src;
-        result.status = true;//表示所有的连通域都已填充完毕
-        return result;
+        return buffer.write(src);
     }
 
     /**
-     * 连通域填充颜色
+     * 连通域填充颜色：面积不超过阀值的连通域置为白色，其余连通域按列优先的顺序依次填充1, 2, 3...(超过255时取255)
      * @param src
+     * @param pArea 面积阀值
      * @return
      */
     public static Mat floodFill(Mat src ,double pArea){
         if(src == null){
             return null;
         }
-        int i, j, color = 1;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-
-        for (i = 0; i < width; i++) {
-            for (j = 0; j < height; j++) {
-                if (GeneralUtils.getPixel(src, j, i) == GeneralUtils.getBLACK()) {
-                    // 用不同的颜色填充连接区域中的每个黑色点
-                    // floodFill就是把与点(i , j)的所有相连通的区域都涂上color颜色
-                    int area = Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(color));
-                    if(area <= pArea) {
-                        System.out.println(color);
-                        Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(255));
-                    }else {
-                        color++;
-                    }
-                    System.out.println(color);
-                }
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ConnectedComponents cc = ConnectedComponents.of(buffer, GeneralUtils.getBLACK());
+        int[] area = cc.getArea();
+        int[] colors = new int[cc.getCount() + 1];
+        int color = 1;
+        for (int k = 0; k < cc.getCount(); k++) {
+            if (area[k] <= pArea) {
+                colors[k + 1] = GeneralUtils.getWHITE();
+            } else {
+                colors[k + 1] = Math.min(color++, GeneralUtils.getWHITE());
             }
         }
-        return src;
+        paint(buffer, cc, colors);
+        return buffer.write(src);
     }
 
 
     //只填充最大的连通域
     public static Mat findMaxConnected(Mat src){
-        int i, j, color = 127;
-        int width = GeneralUtils.getImgWidth(src), height = GeneralUtils.getImgHeight(src);
-        int maxArea = Integer.MAX_VALUE;
-        int maxI = -1 , maxJ = -1;
-        for (i = 0; i < width; i++) {
-            for (j = 0; j < height; j++) {
-                if (GeneralUtils.getPixel(src, j, i) == GeneralUtils.getBLACK()) {
-                    // 用不同的颜色填充连接区域中的每个黑色点
-                    // floodFill就是把与点(i , j)的所有相连通的区域都涂上color颜色
-                    int area = Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(color));
-                    if(maxI != -1 && maxJ != -1){
-                        if(area > maxArea){
-                            maxArea = area;
-                            Imgproc.floodFill(src, new Mat(), new Point(maxI, maxJ), new Scalar(255));
-                            maxI = i;
-                            maxJ = j;
-                        }else{
-                            Imgproc.floodFill(src, new Mat(), new Point(i, j), new Scalar(255));
-                        }
-                    }else{
-                        maxI = i;
-                        maxJ = j;
-                        maxArea = area;
-                    }
-                }
-            }
+        PixelBuffer buffer = PixelBuffer.of(src);
+        ConnectedComponents cc = ConnectedComponents.of(buffer, GeneralUtils.getBLACK());
+        int max = cc.largest();
+        int[] colors = new int[cc.getCount() + 1];
+        Arrays.fill(colors, GeneralUtils.getWHITE());
+        if (max != -1) {
+            colors[max + 1] = 127;
         }
-        return src;
+        paint(buffer, cc, colors);
+        return buffer.write(src);
     }
 
-    private static class Result{
-        Mat mat;//Mat对象
-        boolean status;//是否填充完毕
-        int count;//记录填充的次数
-        int height;//记录上一次填充的height位置
-        int width;//记录上一次填充的width位置
-
-        public Result(){}
-
-        public Result(Mat src){
-            this.mat = src;
+    /**
+     * 把每个连通域的点填充为 colors[序号 + 1]
+     */
+    private static void paint(PixelBuffer buffer, ConnectedComponents cc, int[] colors) {
+        int[] labels = cc.getLabels();
+        int channels = buffer.getChannels();
+        for (int p = 0; p < labels.length; p++) {
+            if (labels[p] != 0) {
+                buffer.setAt(p * channels, colors[labels[p]]);
+            }
         }
     }
 }
@@ -26,7 +26,21 @@ public class ResizeUtils {
 
 
     public static Mat resize(Mat src , Size dsize) {
-        Mat dst = new Mat();
+        return resizeInto(src, dsize, new Mat());
+    }
+
+    /**
+     * 把图片归一化到指定大小，结果写入调用方提供的dst，dst尺寸、类型一致时直接复用其内存
+     *
+     * @param src
+     *            Mat矩阵对象
+     * @param dsize
+     *            目标大小
+     * @param dst
+     *            结果矩阵
+     * @return dst
+     */
+    public static Mat resizeInto(Mat src , Size dsize , Mat dst) {
         // 区域插值(INTER_AREA):图像放大时类似于线性插值，图像缩小时可以避免波纹出现。
         Imgproc.resize(src, dst, dsize, 0, 0, Imgproc.INTER_AREA);
         return dst;
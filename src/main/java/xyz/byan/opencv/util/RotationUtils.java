@@ -1,11 +1,13 @@
 package xyz.byan.opencv.util;
 
 import lombok.experimental.UtilityClass;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.RotatedRect;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
+import xyz.byan.opencv.domain.MatPool;
 
 /**
  * @author: bai
@@ -25,23 +27,45 @@ public class RotationUtils {
      * @return
      */
     public static Mat rotation(Mat mat, RotatedRect rect) {
-        // 获取矩形的四个顶点
-        Point[] rectPoint = new Point[4];
-        rect.points(rectPoint);
+        return rotationInto(mat, rect, new Mat(mat.size(), mat.type()));
+    }
 
+    /**
+     * 旋转矩形，结果写入调用方提供的dst，dst尺寸、类型一致时直接复用其内存
+     * 旋转矩阵从当前线程的 MatPool 中获取，重复调用时不申请本地内存
+     * @param mat
+     *            mat矩阵
+     * @param rect
+     *            矩形
+     * @param dst
+     *            结果矩阵，不能与mat相同
+     * @return dst
+     */
+    public static Mat rotationInto(Mat mat, RotatedRect rect, Mat dst) {
         double angle = rect.angle + 90;
 
         Point center = rect.center;
 
-        Mat CorrectImg = new Mat(mat.size(), mat.type());
-
-        mat.copyTo(CorrectImg);
+        // 得到旋转矩阵算子，与 Imgproc.getRotationMatrix2D(center, angle, 0.8) 相同
+        MatPool pool = MatPool.get();
+        Mat matrix = pool.acquire(2, 3, CvType.CV_64F);
+        rotationMatrix(center, angle, 0.8, matrix);
 
-        // 得到旋转矩阵算子
-        Mat matrix = Imgproc.getRotationMatrix2D(center, angle, 0.8);
+        Imgproc.warpAffine(mat, dst, matrix, mat.size(), 1, 0, new Scalar(0, 0, 0));
+        pool.release(matrix);
 
-        Imgproc.warpAffine(CorrectImg, CorrectImg, matrix, CorrectImg.size(), 1, 0, new Scalar(0, 0, 0));
+        return dst;
+    }
 
-        return CorrectImg;
+    /**
+     * 计算旋转矩阵，写入 2x3 的 CV_64F 矩阵
+     */
+    private static void rotationMatrix(Point center, double angle, double scale, Mat matrix) {
+        double radian = Math.toRadians(angle);
+        double alpha = Math.cos(radian) * scale;
+        double beta = Math.sin(radian) * scale;
+        matrix.put(0, 0,
+                alpha, beta, (1 - alpha) * center.x - beta * center.y,
+                -beta, alpha, beta * center.x + (1 - alpha) * center.y);
     }
 }
@@ -0,0 +1,342 @@
+package xyz.byan.opencv.util;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.log4j.Log4j2;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import xyz.byan.opencv.domain.PixelBuffer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 17:40.
+ * @description: 基于灰度直方图的阀值计算工具类
+ * 8位图像只遍历一次像素生成256级直方图，之后的迭代都在直方图上完成，耗时为 O(像素数 + 256 * 迭代次数)
+ * 多通道图像只统计第一个通道
+ */
+@Log4j2
+@UtilityClass
+public class ThresholdUtils {
+
+    /**
+     * 灰度级数
+     */
+    public static final int LEVELS = 256;
+
+    /**
+     * 与 OpenCV 中的 FLT_EPSILON 一致
+     */
+    private static final double EPSILON = 1.1920929E-7;
+
+    /**
+     * 局部阀值按列分块并行时每块的列数
+     */
+    private static final int COLUMN_BAND = 64;
+
+    /**
+     * 统计8位图像第一个通道的灰度直方图
+     * @param buffer 8位图像的像素缓冲区
+     * @return 256级直方图
+     */
+    public static int[] histogram(PixelBuffer buffer) {
+        return histogram(buffer, new int[LEVELS]);
+    }
+
+    /**
+     * 统计8位图像第一个通道的灰度直方图
+     * @param buffer 8位图像的像素缓冲区
+     * @param hist 结果数组，长度至少为256，会先清零
+     * @return hist
+     */
+    public static int[] histogram(PixelBuffer buffer, int[] hist) {
+        if (buffer.getDepth() != CvType.CV_8U) {
+            throw new RuntimeException("直方图只支持8位图像：" + CvType.typeToString(buffer.getType()));
+        }
+        Arrays.fill(hist, 0, LEVELS, 0);
+        byte[] bytes = buffer.getBytes();
+        int length = buffer.length(), channels = buffer.getChannels();
+        for (int i = 0; i < length; i += channels) {
+            hist[bytes[i] & 0xFF]++;
+        }
+        return hist;
+    }
+
+    /**
+     * 迭代法(均值迭代)自适应选取阀值
+     * @param src Mat矩阵图像
+     * @return 阀值，图像为空时返回-1
+     */
+    public static int iterative(Mat src) {
+        return iterative(PixelBuffer.of(src));
+    }
+
+    /**
+     * 迭代法(均值迭代)自适应选取阀值，8位图像在直方图上迭代，其他深度逐像素迭代
+     * @param buffer 图像的像素缓冲区
+     * @return 阀值，图像为空时返回-1
+     */
+    public static int iterative(PixelBuffer buffer) {
+        if (buffer.length() == 0) {
+            log.error("图像加载异常");
+            return -1;
+        }
+        if (buffer.getDepth() == CvType.CV_8U) {
+            return iterative(histogram(buffer));
+        }
+        int threshold = 0, threshold_new = 127;
+        int nWhite_count, nBlack_count;
+        int nWhite_sum, nBlack_sum;
+        int value, i;
+        int length = buffer.length(), channels = buffer.getChannels();
+        while (threshold != threshold_new) {
+            nWhite_sum = nBlack_sum = 0;
+            nWhite_count = nBlack_count = 0;
+            for (i = 0; i < length; i += channels) {
+                value = buffer.getInt(i);
+                if (value > threshold_new) {
+                    nWhite_count++;
+                    nWhite_sum += value;
+                } else {
+                    nBlack_count++;
+                    nBlack_sum += value;
+                }
+            }
+            threshold = threshold_new;
+            threshold_new = nextThreshold(nWhite_count, nWhite_sum, nBlack_count, nBlack_sum);
+        }
+        return threshold;
+    }
+
+    /**
+     * 在直方图上做均值迭代，与逐像素迭代的结果完全一致(求和同样使用int，溢出时的结果也一致)
+     * @param hist 256级直方图
+     * @return 阀值，直方图为空时返回-1
+     */
+    public static int iterative(int[] hist) {
+        int total = 0;
+        for (int v = 0; v < LEVELS; v++) {
+            total += hist[v];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        int threshold = 0, threshold_new = 127;
+        while (threshold != threshold_new) {
+            int nWhite_sum = 0, nBlack_sum = 0;
+            int nWhite_count = 0, nBlack_count = 0;
+            for (int v = 0; v < LEVELS; v++) {
+                if (v > threshold_new) {
+                    nWhite_count += hist[v];
+                    nWhite_sum += hist[v] * v;
+                } else {
+                    nBlack_count += hist[v];
+                    nBlack_sum += hist[v] * v;
+                }
+            }
+            threshold = threshold_new;
+            threshold_new = nextThreshold(nWhite_count, nWhite_sum, nBlack_count, nBlack_sum);
+        }
+        return threshold;
+    }
+
+    private static int nextThreshold(int nWhite_count, int nWhite_sum, int nBlack_count, int nBlack_sum) {
+        if (nWhite_count == 0 || nBlack_count == 0) {
+            return (nWhite_sum + nBlack_sum) / (nWhite_count + nBlack_count);
+        }
+        return (nWhite_sum / nWhite_count + nBlack_sum / nBlack_count) / 2;
+    }
+
+    /**
+     * 大津法(最大类间方差)选取阀值，与 Imgproc.THRESH_OTSU 的结果一致：像素值大于阀值的为前景
+     * @param hist 256级直方图
+     * @return 阀值，直方图为空时返回-1
+     */
+    public static int otsu(int[] hist) {
+        long total = 0;
+        double sum = 0;
+        for (int v = 0; v < LEVELS; v++) {
+            total += hist[v];
+            sum += (double) v * hist[v];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        double scale = 1.0 / total, mu = sum * scale;
+        double mu1 = 0, q1 = 0, maxSigma = 0;
+        int threshold = 0;
+        for (int v = 0; v < LEVELS; v++) {
+            double p = hist[v] * scale;
+            mu1 *= q1;
+            q1 += p;
+            double q2 = 1.0 - q1;
+            if (Math.min(q1, q2) < EPSILON || Math.max(q1, q2) > 1.0 - EPSILON) {
+                continue;
+            }
+            mu1 = (mu1 + v * p) / q1;
+            double mu2 = (mu - q1 * mu1) / q2;
+            double sigma = q1 * q2 * (mu1 - mu2) * (mu1 - mu2);
+            if (sigma > maxSigma) {
+                maxSigma = sigma;
+                threshold = v;
+            }
+        }
+        return threshold;
+    }
+
+    /**
+     * 大津法选取阀值
+     * @param buffer 8位图像的像素缓冲区
+     * @return 阀值，图像为空时返回-1
+     */
+    public static int otsu(PixelBuffer buffer) {
+        return otsu(histogram(buffer));
+    }
+
+    /**
+     * 三角法选取阀值，适合直方图只有一个明显波峰的图像(如白底黑字的扫描件)，与 Imgproc.THRESH_TRIANGLE 的算法一致
+     * 在波峰与直方图较远一端的连线上，取直方图到连线距离最大的灰度级
+     * @param hist 256级直方图
+     * @return 阀值，直方图为空时返回-1
+     */
+    public static int triangle(int[] hist) {
+        int left = 0, right = 0, peak = 0, maxCount = 0;
+        while (left < LEVELS && hist[left] == 0) {
+            left++;
+        }
+        if (left == LEVELS) {
+            return -1;
+        }
+        if (left > 0) {
+            left--;
+        }
+        for (int v = LEVELS - 1; v > 0; v--) {
+            if (hist[v] > 0) {
+                right = v;
+                break;
+            }
+        }
+        if (right < LEVELS - 1) {
+            right++;
+        }
+        for (int v = 0; v < LEVELS; v++) {
+            if (hist[v] > maxCount) {
+                maxCount = hist[v];
+                peak = v;
+            }
+        }
+        // 较长的一侧在右边时翻转直方图，统一在波峰左侧寻找
+        int[] h = hist;
+        boolean flip = peak - left < right - peak;
+        if (flip) {
+            h = new int[LEVELS];
+            for (int v = 0; v < LEVELS; v++) {
+                h[v] = hist[LEVELS - 1 - v];
+            }
+            left = LEVELS - 1 - right;
+            peak = LEVELS - 1 - peak;
+        }
+        // 连线为 (left, 0) 到 (peak, maxCount)，距离只需比较 a * v + b * h[v]
+        int threshold = left;
+        double a = maxCount, b = left - peak, dist = 0;
+        for (int v = left + 1; v <= peak; v++) {
+            double d = a * v + b * h[v];
+            if (d > dist) {
+                dist = d;
+                threshold = v;
+            }
+        }
+        threshold--;
+        return flip ? LEVELS - 1 - threshold : threshold;
+    }
+
+    /**
+     * 三角法选取阀值
+     * @param buffer 8位图像的像素缓冲区
+     * @return 阀值，图像为空时返回-1
+     */
+    public static int triangle(PixelBuffer buffer) {
+        return triangle(histogram(buffer));
+    }
+
+    /**
+     * 局部自适应阀值：每一列(或列中每 tileRows 行的一段)单独用均值迭代法计算阀值，大于阀值的置为白色
+     * 8位图像按列分块转置到连续的基本类型数组中，在直方图上计算阀值，各列块在 pool 中并行处理；其他深度逐列计算
+     * 多通道图像只处理第一个通道
+     *
+     * @param buffer   图像的像素缓冲区，结果直接写回
+     * @param tileRows 每段的行数，小于等于0时整列使用一个阀值
+     * @param binary   true：小于等于阀值的置为黑色(二值化)；false：小于等于阀值的保持不变
+     * @param pool     并行执行的线程池，为空时顺序执行
+     * @return buffer
+     */
+    public static PixelBuffer columnThreshold(PixelBuffer buffer, int tileRows, boolean binary, ForkJoinPool pool) {
+        int width = buffer.getCols(), height = buffer.getRows();
+        if (width == 0 || height == 0) {
+            return buffer;
+        }
+        int tile = tileRows <= 0 || tileRows > height ? height : tileRows;
+        int white = GeneralUtils.getWHITE(), black = GeneralUtils.getBLACK();
+        if (buffer.getDepth() != CvType.CV_8U) {
+            PixelBuffer column = new PixelBuffer(tile, 1, CvType.makeType(buffer.getDepth(), 1));
+            for (int i = 0; i < width; i++) {
+                for (int r0 = 0; r0 < height; r0 += tile) {
+                    int r1 = Math.min(r0 + tile, height);
+                    column.allocate(r1 - r0, 1, column.getType());
+                    for (int j = r0; j < r1; j++) {
+                        column.setAt(j - r0, buffer.get(j, i));
+                    }
+                    int threshold = iterative(column);
+                    for (int j = r0; j < r1; j++) {
+                        if (buffer.get(j, i) > threshold) {
+                            buffer.set(j, i, white);
+                        } else if (binary) {
+                            buffer.set(j, i, black);
+                        }
+                    }
+                }
+            }
+            return buffer;
+        }
+        byte[] bytes = buffer.getBytes();
+        int channels = buffer.getChannels(), stride = buffer.rowStride();
+        // 复用 forEachBand 按列分块：每块 COLUMN_BAND 列
+        ParallelUtils.forEachBand(pool, width, COLUMN_BAND, (fromCol, toCol) -> {
+            int n = toCol - fromCol;
+            byte[] t = new byte[n * height];
+            int[] hist = new int[LEVELS];
+            int[] lut = new int[LEVELS];
+            for (int j = 0; j < height; j++) {
+                int from = j * stride + fromCol * channels;
+                for (int c = 0; c < n; c++) {
+                    t[c * height + j] = bytes[from + c * channels];
+                }
+            }
+            for (int c = 0; c < n; c++) {
+                int base = c * height;
+                for (int r0 = 0; r0 < height; r0 += tile) {
+                    int r1 = Math.min(r0 + tile, height);
+                    Arrays.fill(hist, 0);
+                    for (int j = base + r0; j < base + r1; j++) {
+                        hist[t[j] & 0xFF]++;
+                    }
+                    int threshold = iterative(hist);
+                    for (int v = 0; v < LEVELS; v++) {
+                        lut[v] = v > threshold ? white : (binary ? black : v);
+                    }
+                    for (int j = base + r0; j < base + r1; j++) {
+                        t[j] = (byte) lut[t[j] & 0xFF];
+                    }
+                }
+            }
+            for (int j = 0; j < height; j++) {
+                int to = j * stride + fromCol * channels;
+                for (int c = 0; c < n; c++) {
+                    bytes[to + c * channels] = t[c * height + j];
+                }
+            }
+        });
+        return buffer;
+    }
+}
@@ -0,0 +1,137 @@
+package xyz.byan.opencv.util;
+
+import lombok.experimental.UtilityClass;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import xyz.byan.opencv.domain.TileFilter;
+import xyz.byan.opencv.domain.TileSink;
+import xyz.byan.opencv.domain.TileSource;
+
+import java.util.Arrays;
+
+/**
+ * @author: bai
+ * @date: 2026/10/18 22:20.
+ * @description: 超大图像的分块处理工具类
+ * 图像按块从 TileSource 读取，每块向四周多读滤波半径大小的重叠区(在图像边界处截断)，处理后去掉重叠区写入 TileSink；
+ * 同一时刻只有一个分块在内存中，峰值内存由分块大小决定，与图像大小无关
+ */
+@UtilityClass
+public class TileUtils {
+
+    /**
+     * 默认每块的行数
+     */
+    public static final int DEFAULT_TILE_ROWS = 512;
+
+    /**
+     * 按整行的条带分块处理，条带从上到下依次读取：重叠区的行从上一个条带的输入中保留，每次只向数据源请求新的行，
+     * 每一行只读取一次；ImageTileSource 读取8位非隔行的 PNG 时据此按行顺序解码，整幅图像只解码一遍
+     * @param source 数据源
+     * @param sink 结果写入的目标
+     * @param tileRows 每块的行数(不含重叠区)
+     * @param filter 滤波
+     */
+    public static void process(TileSource source, TileSink sink, int tileRows, TileFilter filter) {
+        process(source, sink, tileRows, source.cols(), filter);
+    }
+
+    /**
+     * 按 tileRows x tileCols 的块分块处理，按行从左到右依次处理每一块
+     * @param source 数据源
+     * @param sink 结果写入的目标
+     * @param tileRows 每块的行数(不含重叠区)
+     * @param tileCols 每块的列数(不含重叠区)
+     * @param filter 滤波
+     */
+    public static void process(TileSource source, TileSink sink, int tileRows, int tileCols, TileFilter filter) {
+        if (tileRows <= 0 || tileCols <= 0) {
+            throw new RuntimeException("分块大小必须大于0：" + tileRows + "x" + tileCols);
+        }
+        int rows = source.rows(), cols = source.cols(), halo = filter.getRadius();
+        if (tileCols >= cols) {
+            processStrips(source, sink, tileRows, filter);
+            return;
+        }
+        for (int r0 = 0; r0 < rows; r0 += tileRows) {
+            int r1 = Math.min(r0 + tileRows, rows);
+            int top = Math.max(r0 - halo, 0), bottom = Math.min(r1 + halo, rows);
+            for (int c0 = 0; c0 < cols; c0 += tileCols) {
+                int c1 = Math.min(c0 + tileCols, cols);
+                int left = Math.max(c0 - halo, 0), right = Math.min(c1 + halo, cols);
+                Mat in = source.read(new Rect(left, top, right - left, bottom - top));
+                Mat out = apply(filter, in);
+                Mat center = out.submat(r0 - top, r1 - top, c0 - left, c1 - left);
+                sink.write(new Rect(c0, r0, c1 - c0, r1 - r0), center);
+                center.release();
+                out.release();
+                in.release();
+            }
+        }
+    }
+
+    /**
+     * 按整行的条带处理，重叠区的行从上一个条带保留，数据源只收到按顺序、不重叠的整行请求；
+     * 保留的行在滤波之前复制出来，原地修改输入的滤波也不会影响下一个条带
+     */
+    private static void processStrips(TileSource source, TileSink sink, int tileRows, TileFilter filter) {
+        int rows = source.rows(), cols = source.cols(), halo = filter.getRadius();
+        Mat kept = null;
+        int keptTop = 0;
+        int read = 0;
+        for (int r0 = 0; r0 < rows; r0 += tileRows) {
+            int r1 = Math.min(r0 + tileRows, rows);
+            int top = Math.max(r0 - halo, 0), bottom = Math.min(r1 + halo, rows);
+            Mat in;
+            Mat reuse = kept == null || keptTop > top ? null : kept.rowRange(top - keptTop, kept.rows());
+            if (reuse == null) {
+                in = source.read(new Rect(0, top, cols, bottom - top));
+            } else if (bottom > read) {
+                Mat fresh = source.read(new Rect(0, read, cols, bottom - read));
+                in = new Mat();
+                Core.vconcat(Arrays.asList(reuse, fresh), in);
+                fresh.release();
+            } else {
+                in = reuse.clone();
+            }
+            read = bottom;
+            if (reuse != null) {
+                reuse.release();
+            }
+            if (kept != null) {
+                kept.release();
+                kept = null;
+            }
+            int nextTop = Math.max(r1 - halo, 0);
+            if (r1 < rows && nextTop < bottom) {
+                kept = in.rowRange(nextTop - top, bottom - top).clone();
+                keptTop = nextTop;
+            }
+            Mat out = apply(filter, in);
+            Mat center = out.rowRange(r0 - top, r1 - top);
+            sink.write(new Rect(0, r0, cols, r1 - r0), center);
+            center.release();
+            out.release();
+            in.release();
+        }
+        if (kept != null) {
+            kept.release();
+        }
+    }
+
+    /**
+     * 执行滤波并检查结果大小，改变大小的滤波不能分块执行
+     */
+    private static Mat apply(TileFilter filter, Mat in) {
+        Mat out = filter.apply(in);
+        if (out.rows() != in.rows() || out.cols() != in.cols()) {
+            String size = out.rows() + "x" + out.cols();
+            if (out != in) {
+                out.release();
+            }
+            throw new RuntimeException("分块滤波必须返回与输入大小相同的矩阵：输入" + in.rows() + "x" + in.cols() + "，输出" + size);
+        }
+        return out;
+    }
+}
@@ -7,6 +7,7 @@ import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.utils.Converters;
+import xyz.byan.opencv.domain.MatScope;
 
 import java.util.Arrays;
 import java.util.List;
@@ -27,24 +28,26 @@ public class WarpPerspectiveUtils {
      */
     public static Mat warpPerspective(Mat src , Point[] points) {
 
-        // 点的顺序[左上 ，右上 ，右下 ，左下]
-        List<Point> listSrcs = Arrays.asList(points[0], points[1], points[2], points[3]);
-        Mat srcPoints = Converters.vector_Point_to_Mat(listSrcs, CvType.CV_32F);
+        try (MatScope scope = new MatScope()) {
+            // 点的顺序[左上 ，右上 ，右下 ，左下]
+            List<Point> listSrcs = Arrays.asList(points[0], points[1], points[2], points[3]);
+            Mat srcPoints = scope.track(Converters.vector_Point_to_Mat(listSrcs, CvType.CV_32F));
 
-        List<Point> listDsts = Arrays.asList(new Point(0, 0), new Point(src.width(), 0),
-                new Point(src.width(), src.height()), new Point(0, src.height()));
+            List<Point> listDsts = Arrays.asList(new Point(0, 0), new Point(src.width(), 0),
+                    new Point(src.width(), src.height()), new Point(0, src.height()));
 
 
-        Mat dstPoints = Converters.vector_Point_to_Mat(listDsts, CvType.CV_32F);
+            Mat dstPoints = scope.track(Converters.vector_Point_to_Mat(listDsts, CvType.CV_32F));
 
-        Mat perspectiveMmat = Imgproc.getPerspectiveTransform(srcPoints, dstPoints);
+            Mat perspectiveMmat = scope.track(Imgproc.getPerspectiveTransform(srcPoints, dstPoints));
 
-        Mat dst = new Mat();
+            Mat dst = new Mat();
 
-        Imgproc.warpPerspective(src, dst, perspectiveMmat, src.size(), Imgproc.INTER_LINEAR + Imgproc.WARP_INVERSE_MAP,
-                1, new Scalar(0));
+            Imgproc.warpPerspective(src, dst, perspectiveMmat, src.size(), Imgproc.INTER_LINEAR + Imgproc.WARP_INVERSE_MAP,
+                    1, new Scalar(0));
 
-        return dst;
+            return dst;
+        }
 
     }
 